@@ -0,0 +1,9 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+/**
+ * The business service a participant node exports to the initiator.
+ */
+public interface AccountService {
+
+	void increment(long id);
+}
@@ -0,0 +1,49 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import javax.sql.XADataSource;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import com.sxb.lin.atomikos.dubbo.spring.jdbc.XAConnectionHolder;
+import com.sxb.lin.atomikos.dubbo.spring.jdbc.XADataSourceUtils;
+
+/**
+ * Participant side: the xa connection joins the transaction of the tm that called,
+ * the same way XASpringManagedTransaction does for mybatis.
+ */
+public class AccountServiceImpl implements AccountService {
+
+	private final XADataSource xaDataSource;
+
+	private final String uniqueResourceName;
+
+	public AccountServiceImpl(XADataSource xaDataSource, String uniqueResourceName) {
+		this.xaDataSource = xaDataSource;
+		this.uniqueResourceName = uniqueResourceName;
+	}
+
+	@Transactional
+	public void increment(long id) {
+		XAConnectionHolder holder = null;
+		try {
+			holder = XADataSourceUtils.getXAConnection(xaDataSource, uniqueResourceName);
+			PreparedStatement statement = holder.getConnection().prepareStatement(
+					"update account set amount = amount + 1 where id = ?");
+			try {
+				statement.setLong(1, id);
+				statement.executeUpdate();
+			} finally {
+				statement.close();
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		} finally {
+			if(holder != null){
+				XADataSourceUtils.releaseConnection(holder.getXaConnection(), xaDataSource);
+			}
+		}
+	}
+}
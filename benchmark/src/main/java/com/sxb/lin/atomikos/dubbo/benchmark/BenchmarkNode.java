@@ -0,0 +1,183 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.sql.XAConnection;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import com.alibaba.dubbo.config.ApplicationConfig;
+import com.alibaba.dubbo.config.ConsumerConfig;
+import com.alibaba.dubbo.config.ProtocolConfig;
+import com.alibaba.dubbo.config.ProviderConfig;
+import com.alibaba.dubbo.config.RegistryConfig;
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.icatch.jta.UserTransactionManager;
+import com.sxb.lin.atomikos.dubbo.ParticipantXATransactionLocal;
+import com.sxb.lin.atomikos.dubbo.pool.JdbcXAResourceHolder;
+import com.sxb.lin.atomikos.dubbo.pool.recover.DataSourceResource;
+import com.sxb.lin.atomikos.dubbo.pool.recover.UniqueResource;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerService;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceConfig;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
+
+/**
+ * One transactions-dubbo node per JVM: an in-JVM Atomikos transaction manager, the exported
+ * DubboTransactionManagerService and embedded H2 XA databases. The node is its own tm,
+ * so every enlist, prepare and commit goes through the local service.
+ */
+public class BenchmarkNode {
+
+	public final static String UNIQUE_RESOURCE_NAME_PREFIX = "benchmark-h2-";
+
+	public final static int DATABASES = 2;
+
+	public final static int TRANSACTION_TIMEOUT = 30;
+
+	/**
+	 * dubbo generates classes with javassist,which needs java.lang opened on jdk 9+.
+	 * the option is ignored by older jvms.
+	 */
+	public final static String IGNORE_UNRECOGNIZED_VM_OPTIONS = "-XX:+IgnoreUnrecognizedVMOptions";
+
+	public final static String OPEN_JAVA_LANG = "--add-opens=java.base/java.lang=ALL-UNNAMED";
+
+	public final static String OPEN_JAVA_MATH = "--add-opens=java.base/java.math=ALL-UNNAMED";
+
+	private static BenchmarkNode instance;
+
+	private final UserTransactionManager userTransactionManager;
+
+	private final JdbcDataSource[] dataSources;
+
+	private final String[] uniqueResourceNames;
+
+	private BenchmarkNode(UserTransactionManager userTransactionManager,
+			JdbcDataSource[] dataSources, String[] uniqueResourceNames) {
+		this.userTransactionManager = userTransactionManager;
+		this.dataSources = dataSources;
+		this.uniqueResourceNames = uniqueResourceNames;
+	}
+
+	public static synchronized BenchmarkNode start() throws Exception {
+		if(instance != null){
+			return instance;
+		}
+		File logDir = new File(System.getProperty("java.io.tmpdir"), "transactions-dubbo-benchmark-" + UUID.randomUUID());
+		System.setProperty("com.atomikos.icatch.log_base_dir", logDir.getAbsolutePath());
+		System.setProperty("com.atomikos.icatch.output_dir", logDir.getAbsolutePath());
+		System.setProperty("com.atomikos.icatch.tm_unique_name", "benchmark-" + UUID.randomUUID().toString().substring(0, 8));
+		System.setProperty("com.atomikos.icatch.registered", "true");
+		System.setProperty("com.atomikos.icatch.max_actives", "-1");
+
+		UserTransactionManager userTransactionManager = new UserTransactionManager();
+		userTransactionManager.setForceShutdown(true);
+		userTransactionManager.init();
+		userTransactionManager.setTransactionTimeout(TRANSACTION_TIMEOUT);
+
+		JdbcDataSource[] dataSources = new JdbcDataSource[DATABASES];
+		String[] uniqueResourceNames = new String[DATABASES];
+		Map<String, UniqueResource> uniqueResourceMapping = new HashMap<String, UniqueResource>();
+		for(int i = 0;i < DATABASES;i++){
+			uniqueResourceNames[i] = UNIQUE_RESOURCE_NAME_PREFIX + i;
+			dataSources[i] = createDataSource(uniqueResourceNames[i]);
+			uniqueResourceMapping.put(uniqueResourceNames[i], new DataSourceResource(uniqueResourceNames[i], dataSources[i]));
+		}
+
+		DubboTransactionManagerServiceConfig config = new DubboTransactionManagerServiceConfig();
+		config.setApplicationConfig(new ApplicationConfig("transactions-dubbo-benchmark"));
+		config.setRegistryConfig(new RegistryConfig(System.getProperty("benchmark.registry", "multicast://224.5.6.7:1234")));
+		config.setProtocolConfig(new ProtocolConfig("dubbo", Integer.getInteger("benchmark.port", -1)));
+		config.setProviderConfig(new ProviderConfig());
+		ConsumerConfig consumerConfig = new ConsumerConfig();
+		consumerConfig.setCheck(false);
+		config.setConsumerConfig(consumerConfig);
+		config.setUniqueResourceMapping(uniqueResourceMapping);
+		DubboTransactionManagerServiceProxy.getInstance().init(config);
+
+		instance = new BenchmarkNode(userTransactionManager, dataSources, uniqueResourceNames);
+		return instance;
+	}
+
+	public static synchronized void stop(){
+		if(instance == null){
+			return;
+		}
+		ProtocolConfig.destroyAll();
+		DubboTransactionManagerServiceProxy.getInstance().getXaResourcePool().close();
+		instance.userTransactionManager.close();
+		instance = null;
+	}
+
+	static JdbcDataSource createDataSource(String name) throws SQLException {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+		Connection connection = dataSource.getConnection();
+		try {
+			Statement statement = connection.createStatement();
+			statement.execute("create table if not exists account(id bigint primary key, amount bigint)");
+			statement.execute("merge into account key(id) values(1, 0)");
+			statement.close();
+		} finally {
+			connection.close();
+		}
+		return dataSource;
+	}
+
+	public String getLocalAddress(){
+		return DubboTransactionManagerServiceProxy.getInstance().getLocalAddress();
+	}
+
+	public String getUniqueResourceName(int database){
+		return uniqueResourceNames[database];
+	}
+
+	public UserTransactionManager getUserTransactionManager() {
+		return userTransactionManager;
+	}
+
+	/**
+	 * begin a transaction on the current thread and return its tid.
+	 */
+	public String begin() throws Exception {
+		userTransactionManager.begin();
+		return Configuration.getCompositeTransactionManager().getCompositeTransaction().getTid();
+	}
+
+	/**
+	 * what ProviderXATransactionFilter binds for a call coming from the tm.
+	 */
+	public ParticipantXATransactionLocal bindParticipant(String tid) {
+		ParticipantXATransactionLocal local = new ParticipantXATransactionLocal();
+		local.setTmAddress(this.getLocalAddress());
+		local.setTid(tid);
+		local.setTimeOut(String.valueOf(System.currentTimeMillis() + TRANSACTION_TIMEOUT * 1000L
+				+ DubboTransactionManagerService.ADD_TIME));
+		local.bindToThread();
+		return local;
+	}
+
+	public JdbcXAResourceHolder createXAResourceHolder(int database) throws SQLException {
+		XAConnection xaConnection = dataSources[database].getXAConnection();
+		Connection connection = xaConnection.getConnection();
+		return new JdbcXAResourceHolder(uniqueResourceNames[database], UUID.randomUUID().toString(),
+				xaConnection, connection, xaConnection.getXAResource());
+	}
+
+	public static void update(JdbcXAResourceHolder xaResourceHolder) throws SQLException {
+		Statement statement = xaResourceHolder.getConnection().createStatement();
+		try {
+			statement.executeUpdate("update account set amount = amount + 1 where id = 1");
+		} finally {
+			statement.close();
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end throughput of distributed transactions: this JVM is the initiator and tm,
+ * every participant is a forked JVM exporting AccountService. Each transaction updates the
+ * initiator's database,calls every participant and commits through tm.DataSourceTransactionManager.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.sxb.lin.atomikos.dubbo.benchmark.ClusterBenchmark
+ *     [-participants 2] [-threads 8] [-warmup 10] [-seconds 30] [-registry directory://127.0.0.1/tmp/dir]
+ * </pre>
+ *
+ * enlist is timed where the tm serves it,prepare and commit are the round trips seen by the tm.
+ */
+public class ClusterBenchmark {
+
+	private final static String PARTICIPANT = "participant";
+
+	private final static String READY = "READY";
+
+	private final static LatencyRecorder TRANSACTION = new LatencyRecorder("tx");
+
+	public static void main(String[] args) throws Exception {
+		if(args.length > 0 && args[0].equals(PARTICIPANT)){
+			participant(Integer.parseInt(args[1]), args[2]);
+			return;
+		}
+
+		int participants = 2;
+		int threads = 8;
+		int warmup = 10;
+		int seconds = 30;
+		String registry = null;
+		for(int i = 0;i + 1 < args.length;i += 2){
+			if(args[i].equals("-participants")){
+				participants = Integer.parseInt(args[i + 1]);
+			}else if(args[i].equals("-threads")){
+				threads = Integer.parseInt(args[i + 1]);
+			}else if(args[i].equals("-warmup")){
+				warmup = Integer.parseInt(args[i + 1]);
+			}else if(args[i].equals("-seconds")){
+				seconds = Integer.parseInt(args[i + 1]);
+			}else if(args[i].equals("-registry")){
+				registry = args[i + 1];
+			}else{
+				throw new IllegalArgumentException("unknown option " + args[i]);
+			}
+		}
+		if(registry == null){
+			File dir = new File(System.getProperty("java.io.tmpdir"), "transactions-dubbo-benchmark-registry-" + UUID.randomUUID());
+			registry = "directory://127.0.0.1" + dir.getAbsolutePath();
+		}
+
+		List<Process> processes = new ArrayList<Process>();
+		try {
+			for(int i = 0;i < participants;i++){
+				processes.add(fork(i, registry));
+			}
+			initiator(participants, registry, threads, warmup, seconds);
+		} finally {
+			ClusterNode.stop();
+			for(Process process : processes){
+				process.destroy();
+			}
+		}
+		System.exit(0);
+	}
+
+	private static void participant(int index, String registry) throws Exception {
+		ClusterNode node = ClusterNode.start(PARTICIPANT + "-" + index, registry);
+		AccountService accountService = new AccountServiceImpl(node.getDataSource(), node.getUniqueResourceName());
+		node.export(AccountService.class, node.transactional(AccountService.class, accountService), node.getName());
+		System.out.println(READY);
+		System.out.flush();
+
+		// the initiator destroys this process,or closes its stdin when it dies
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		while(in.readLine() != null){
+		}
+		ClusterNode.stop();
+		System.exit(0);
+	}
+
+	private static Process fork(final int index, String registry) throws IOException, InterruptedException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, BenchmarkNode.IGNORE_UNRECOGNIZED_VM_OPTIONS,
+				BenchmarkNode.OPEN_JAVA_LANG, BenchmarkNode.OPEN_JAVA_MATH,
+				"-cp", System.getProperty("java.class.path"), ClusterBenchmark.class.getName(),
+				PARTICIPANT, String.valueOf(index), registry);
+		builder.redirectErrorStream(true);
+		final Process process = builder.start();
+		final CountDownLatch ready = new CountDownLatch(1);
+		Thread output = new Thread(new Runnable() {
+			public void run() {
+				try {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+					String line = null;
+					while((line = reader.readLine()) != null){
+						if(line.equals(READY)){
+							ready.countDown();
+						}else{
+							System.err.println("[" + PARTICIPANT + "-" + index + "] " + line);
+						}
+					}
+				} catch (IOException e) {
+					// process destroyed
+				}
+			}
+		}, PARTICIPANT + "-" + index + "-output");
+		output.setDaemon(true);
+		output.start();
+		if(!ready.await(60, TimeUnit.SECONDS)){
+			process.destroy();
+			throw new IllegalStateException(PARTICIPANT + "-" + index + " did not start in 60 seconds");
+		}
+		return process;
+	}
+
+	private static void initiator(int participants, String registry, int threads, int warmup, int seconds)
+			throws Exception {
+		ClusterNode node = ClusterNode.start("initiator", registry);
+		List<AccountService> accountServices = new ArrayList<AccountService>();
+		for(int i = 0;i < participants;i++){
+			accountServices.add(node.refer(AccountService.class, PARTICIPANT + "-" + i));
+		}
+		final TransferService transferService = node.transactional(TransferService.class,
+				new TransferServiceImpl(node.getDataSource(), accountServices));
+		awaitProviders(transferService);
+
+		System.out.println("participants " + participants + ",threads " + threads
+				+ ",warmup " + warmup + "s,measurement " + seconds + "s");
+		run(transferService, threads, warmup);
+
+		TRANSACTION.start();
+		PhaseTimingFilter.ENLIST.start();
+		PhaseTimingFilter.PREPARE.start();
+		PhaseTimingFilter.COMMIT.start();
+		long failures = run(transferService, threads, seconds);
+		TRANSACTION.stop();
+		PhaseTimingFilter.ENLIST.stop();
+		PhaseTimingFilter.PREPARE.stop();
+		PhaseTimingFilter.COMMIT.stop();
+
+		System.out.println(String.format("tps %.1f,failures %d", TRANSACTION.getCount() / (double) seconds, failures));
+		System.out.println(LatencyRecorder.header());
+		System.out.println(TRANSACTION.report());
+		System.out.println(PhaseTimingFilter.ENLIST.report());
+		System.out.println(PhaseTimingFilter.PREPARE.report());
+		System.out.println(PhaseTimingFilter.COMMIT.report());
+	}
+
+	/**
+	 * the registry notifies the references asynchronously,retry until one transaction commits.
+	 */
+	private static void awaitProviders(TransferService transferService) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 30000;
+		while(true){
+			try {
+				transferService.transfer();
+				return;
+			} catch (RuntimeException e) {
+				if(System.currentTimeMillis() > deadline){
+					throw e;
+				}
+				Thread.sleep(200);
+			}
+		}
+	}
+
+	/**
+	 * run transfers on all threads for the given seconds,return the number of failed ones.
+	 */
+	private static long run(final TransferService transferService, int threads, int seconds)
+			throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final AtomicLong failures = new AtomicLong();
+		Thread[] workers = new Thread[threads];
+		for(int i = 0;i < threads;i++){
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					while(System.nanoTime() < deadline){
+						long start = System.nanoTime();
+						try {
+							transferService.transfer();
+							TRANSACTION.record(System.nanoTime() - start);
+						} catch (RuntimeException e) {
+							if(failures.incrementAndGet() == 1){
+								e.printStackTrace();
+							}
+						}
+					}
+				}
+			}, "transfer-" + i);
+			workers[i].start();
+		}
+		for(Thread worker : workers){
+			worker.join();
+		}
+		return failures.get();
+	}
+}
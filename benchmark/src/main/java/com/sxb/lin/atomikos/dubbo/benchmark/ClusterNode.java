@@ -0,0 +1,174 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+import com.alibaba.dubbo.config.ApplicationConfig;
+import com.alibaba.dubbo.config.ConsumerConfig;
+import com.alibaba.dubbo.config.ProtocolConfig;
+import com.alibaba.dubbo.config.ProviderConfig;
+import com.alibaba.dubbo.config.ReferenceConfig;
+import com.alibaba.dubbo.config.RegistryConfig;
+import com.alibaba.dubbo.config.ServiceConfig;
+import com.atomikos.icatch.jta.UserTransactionImp;
+import com.atomikos.icatch.jta.UserTransactionManager;
+import com.sxb.lin.atomikos.dubbo.pool.recover.DataSourceResource;
+import com.sxb.lin.atomikos.dubbo.pool.recover.UniqueResource;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceConfig;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
+import com.sxb.lin.atomikos.dubbo.spring.TransactionAttributeSourceProxy;
+import com.sxb.lin.atomikos.dubbo.tm.DataSourceTransactionManager;
+
+/**
+ * One node of the ClusterBenchmark,configured the way the README configures a project:
+ * an Atomikos transaction manager,one H2 XA database behind tm.DataSourceTransactionManager,
+ * the xa filters on every service and reference and the exported DubboTransactionManagerService.
+ * Atomikos and the proxy are singletons,so there is one node per JVM.
+ */
+public class ClusterNode {
+
+	public final static String PROVIDER_FILTER = "providerXATransactionFilter,phaseTiming";
+
+	public final static String CONSUMER_FILTER = "consumerXATransactionFilter,phaseTiming";
+
+	private static ClusterNode instance;
+
+	private final String name;
+
+	private final UserTransactionManager userTransactionManager;
+
+	private final JdbcDataSource dataSource;
+
+	private final String uniqueResourceName;
+
+	private final TransactionInterceptor transactionInterceptor;
+
+	private final DubboTransactionManagerServiceConfig config;
+
+	private ClusterNode(String name, UserTransactionManager userTransactionManager, JdbcDataSource dataSource,
+			String uniqueResourceName, TransactionInterceptor transactionInterceptor,
+			DubboTransactionManagerServiceConfig config) {
+		this.name = name;
+		this.userTransactionManager = userTransactionManager;
+		this.dataSource = dataSource;
+		this.uniqueResourceName = uniqueResourceName;
+		this.transactionInterceptor = transactionInterceptor;
+		this.config = config;
+	}
+
+	public static synchronized ClusterNode start(String name, String registry) throws Exception {
+		if(instance != null){
+			return instance;
+		}
+		File logDir = new File(System.getProperty("java.io.tmpdir"), "transactions-dubbo-benchmark-" + UUID.randomUUID());
+		System.setProperty("com.atomikos.icatch.log_base_dir", logDir.getAbsolutePath());
+		System.setProperty("com.atomikos.icatch.output_dir", logDir.getAbsolutePath());
+		System.setProperty("com.atomikos.icatch.tm_unique_name", name + "-" + UUID.randomUUID().toString().substring(0, 8));
+		System.setProperty("com.atomikos.icatch.registered", "true");
+		System.setProperty("com.atomikos.icatch.max_actives", "-1");
+
+		UserTransactionManager userTransactionManager = new UserTransactionManager();
+		userTransactionManager.setForceShutdown(true);
+		userTransactionManager.init();
+		userTransactionManager.setTransactionTimeout(BenchmarkNode.TRANSACTION_TIMEOUT);
+
+		String uniqueResourceName = BenchmarkNode.UNIQUE_RESOURCE_NAME_PREFIX + name;
+		JdbcDataSource dataSource = BenchmarkNode.createDataSource(uniqueResourceName);
+
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager();
+		transactionManager.setDataSource(dataSource);
+		transactionManager.setUserTransaction(new UserTransactionImp());
+		transactionManager.setTransactionManager(userTransactionManager);
+		transactionManager.afterPropertiesSet();
+
+		TransactionAttributeSourceProxy transactionAttributeSourceProxy = new TransactionAttributeSourceProxy();
+		transactionAttributeSourceProxy.setTransactionAttributeSource(new AnnotationTransactionAttributeSource());
+		TransactionInterceptor transactionInterceptor = new TransactionInterceptor();
+		transactionInterceptor.setTransactionManager(transactionManager);
+		transactionInterceptor.setTransactionAttributeSource(transactionAttributeSourceProxy);
+
+		RegistryConfig registryConfig = new RegistryConfig(registry);
+		registryConfig.setFile(new File(logDir, "dubbo-registry.cache").getAbsolutePath());
+		ProviderConfig providerConfig = new ProviderConfig();
+		providerConfig.setFilter(PROVIDER_FILTER);
+		ConsumerConfig consumerConfig = new ConsumerConfig();
+		consumerConfig.setCheck(false);
+		consumerConfig.setFilter(CONSUMER_FILTER);
+
+		DubboTransactionManagerServiceConfig config = new DubboTransactionManagerServiceConfig();
+		config.setApplicationConfig(new ApplicationConfig("transactions-dubbo-benchmark-" + name));
+		config.setRegistryConfig(registryConfig);
+		config.setProtocolConfig(new ProtocolConfig("dubbo", -1));
+		config.setProviderConfig(providerConfig);
+		config.setConsumerConfig(consumerConfig);
+		config.setUniqueResourceMapping(Collections.<String, UniqueResource>singletonMap(
+				uniqueResourceName, new DataSourceResource(uniqueResourceName, dataSource)));
+		DubboTransactionManagerServiceProxy.getInstance().init(config);
+
+		instance = new ClusterNode(name, userTransactionManager, dataSource, uniqueResourceName,
+				transactionInterceptor, config);
+		return instance;
+	}
+
+	public static synchronized void stop(){
+		if(instance == null){
+			return;
+		}
+		ProtocolConfig.destroyAll();
+		DubboTransactionManagerServiceProxy.getInstance().getXaResourcePool().close();
+		instance.userTransactionManager.close();
+		instance = null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public JdbcDataSource getDataSource() {
+		return dataSource;
+	}
+
+	public String getUniqueResourceName() {
+		return uniqueResourceName;
+	}
+
+	/**
+	 * wrap target in the transaction interceptor,as spring does for @Transactional beans.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T transactional(Class<T> interfaceClass, T target){
+		ProxyFactory proxyFactory = new ProxyFactory(target);
+		proxyFactory.addInterface(interfaceClass);
+		proxyFactory.addAdvice(transactionInterceptor);
+		return (T) proxyFactory.getProxy();
+	}
+
+	public <T> void export(Class<T> interfaceClass, T ref, String group){
+		ServiceConfig<T> serviceConfig = new ServiceConfig<T>();
+		serviceConfig.setApplication(config.getApplicationConfig());
+		serviceConfig.setRegistry(config.getRegistryConfig());
+		serviceConfig.setProtocol(config.getProtocolConfig());
+		serviceConfig.setProvider(config.getProviderConfig());
+		serviceConfig.setInterface(interfaceClass);
+		serviceConfig.setRef(ref);
+		serviceConfig.setGroup(group);
+		serviceConfig.export();
+	}
+
+	public <T> T refer(Class<T> interfaceClass, String group){
+		ReferenceConfig<T> referenceConfig = new ReferenceConfig<T>();
+		referenceConfig.setApplication(config.getApplicationConfig());
+		referenceConfig.setRegistry(config.getRegistryConfig());
+		referenceConfig.setConsumer(config.getConsumerConfig());
+		referenceConfig.setInterface(interfaceClass);
+		referenceConfig.setGroup(group);
+		referenceConfig.setScope("remote");
+		return referenceConfig.get();
+	}
+}
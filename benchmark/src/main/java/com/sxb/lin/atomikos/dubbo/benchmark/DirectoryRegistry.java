@@ -0,0 +1,198 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.utils.UrlUtils;
+import com.alibaba.dubbo.registry.NotifyListener;
+import com.alibaba.dubbo.registry.support.FailbackRegistry;
+
+/**
+ * Stand-in registry for nodes on one host: every registered url is a file in a shared
+ * directory,subscribers poll the directory. Address form directory://127.0.0.1/path/to/dir.
+ */
+public class DirectoryRegistry extends FailbackRegistry {
+
+	private final static long POLL_MILLIS = 200;
+
+	private final static String SUFFIX = ".url";
+
+	private final File dir;
+
+	private final Map<URL, Set<NotifyListener>> listeners = new ConcurrentHashMap<URL, Set<NotifyListener>>();
+
+	private final Map<URL, List<URL>> notified = new ConcurrentHashMap<URL, List<URL>>();
+
+	private final ScheduledExecutorService pollExecutor;
+
+	public DirectoryRegistry(URL url) {
+		super(url);
+		this.dir = new File("/" + url.getPath());
+		dir.mkdirs();
+		this.pollExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "DirectoryRegistryPoll");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		pollExecutor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				poll();
+			}
+		}, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	public boolean isAvailable() {
+		return dir.isDirectory();
+	}
+
+	@Override
+	protected void doRegister(URL url) {
+		String str = url.toFullString();
+		File tmp = new File(dir, this.fileName(url) + ".tmp");
+		try {
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(str.getBytes("UTF-8"));
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("can not register " + str + " to " + dir, e);
+		}
+		if(!tmp.renameTo(new File(dir, this.fileName(url)))){
+			throw new IllegalStateException("can not register " + str + " to " + dir);
+		}
+	}
+
+	@Override
+	protected void doUnregister(URL url) {
+		new File(dir, this.fileName(url)).delete();
+	}
+
+	@Override
+	protected void doSubscribe(URL url, NotifyListener listener) {
+		Set<NotifyListener> set = listeners.get(url);
+		if(set == null){
+			set = new HashSet<NotifyListener>();
+			listeners.put(url, set);
+		}
+		synchronized (set) {
+			set.add(listener);
+		}
+		this.notify(url, listener, this.lookup(url, this.read()));
+	}
+
+	@Override
+	protected void doUnsubscribe(URL url, NotifyListener listener) {
+		Set<NotifyListener> set = listeners.get(url);
+		if(set != null){
+			synchronized (set) {
+				set.remove(listener);
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+		pollExecutor.shutdownNow();
+		super.destroy();
+	}
+
+	private synchronized void poll(){
+		try {
+			List<URL> all = this.read();
+			for(Map.Entry<URL, Set<NotifyListener>> entry : listeners.entrySet()){
+				URL url = entry.getKey();
+				List<URL> urls = this.lookup(url, all);
+				if(urls.equals(notified.get(url))){
+					continue;
+				}
+				notified.put(url, urls);
+				List<NotifyListener> list = null;
+				synchronized (entry.getValue()) {
+					list = new ArrayList<NotifyListener>(entry.getValue());
+				}
+				for(NotifyListener listener : list){
+					this.notify(url, listener, urls);
+				}
+			}
+		} catch (RuntimeException e) {
+			logger.warn(e.getMessage(), e);
+		}
+	}
+
+	private List<URL> lookup(URL url, List<URL> all){
+		List<URL> urls = new ArrayList<URL>();
+		for(URL u : all){
+			if(UrlUtils.isMatch(url, u)){
+				urls.add(u);
+			}
+		}
+		String[] categories = url.getParameter(Constants.CATEGORY_KEY, Constants.DEFAULT_CATEGORY).split(",");
+		for(String category : categories){
+			boolean found = false;
+			for(URL u : urls){
+				if(category.equals(u.getParameter(Constants.CATEGORY_KEY, Constants.DEFAULT_CATEGORY))){
+					found = true;
+					break;
+				}
+			}
+			if(!found){
+				urls.add(url.setProtocol(Constants.EMPTY_PROTOCOL).addParameter(Constants.CATEGORY_KEY, category));
+			}
+		}
+		return urls;
+	}
+
+	private List<URL> read(){
+		List<URL> urls = new ArrayList<URL>();
+		File[] files = dir.listFiles();
+		if(files == null){
+			return urls;
+		}
+		for(File file : files){
+			if(!file.getName().endsWith(SUFFIX)){
+				continue;
+			}
+			try {
+				InputStream in = new FileInputStream(file);
+				try {
+					byte[] bytes = new byte[(int) file.length()];
+					int offset = 0;
+					int n = 0;
+					while(offset < bytes.length && (n = in.read(bytes, offset, bytes.length - offset)) > 0){
+						offset += n;
+					}
+					urls.add(URL.valueOf(new String(bytes, 0, offset, "UTF-8")));
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// unregistered while reading
+			}
+		}
+		return urls;
+	}
+
+	private String fileName(URL url){
+		return Integer.toHexString(url.toFullString().hashCode()) + SUFFIX;
+	}
+}
@@ -0,0 +1,13 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.registry.Registry;
+import com.alibaba.dubbo.registry.support.AbstractRegistryFactory;
+
+public class DirectoryRegistryFactory extends AbstractRegistryFactory {
+
+	@Override
+	protected Registry createRegistry(URL url) {
+		return new DirectoryRegistry(url);
+	}
+}
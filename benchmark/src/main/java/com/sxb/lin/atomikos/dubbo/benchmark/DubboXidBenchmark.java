@@ -0,0 +1,99 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.xa.Xid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atomikos.datasource.xa.XID;
+import com.sxb.lin.atomikos.dubbo.service.DubboXid;
+
+/**
+ * Hashing,equality and conversion of the xids used as pool and group keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DubboXidBenchmark {
+
+	private final static String TID_PREFIX = "192.168.1.101.tm15392503465620";
+
+	@Param({"1024"})
+	private int size;
+
+	private XID atomikosXid;
+
+	private DubboXid xid;
+
+	private DubboXid equalXid;
+
+	private DubboXid otherXid;
+
+	private Map<Xid, Object> map;
+
+	private DubboXid[] keys;
+
+	private int index;
+
+	@Setup
+	public void setup(){
+		map = new HashMap<Xid, Object>();
+		keys = new DubboXid[size];
+		for(int i = 0;i < size;i++){
+			String tid = TID_PREFIX + String.format("%05d", i);
+			keys[i] = DubboXid.valueOf(new XID(tid, tid + "1c2d3e4f" + i));
+			map.put(keys[i], Boolean.TRUE);
+		}
+		atomikosXid = new XID(TID_PREFIX + "00000", TID_PREFIX + "000001c2d3e4f0");
+		xid = DubboXid.valueOf(atomikosXid);
+		equalXid = new DubboXid(xid.getFormatId(), xid.getGlobalTransactionId(), xid.getBranchQualifier());
+		otherXid = keys[size - 1];
+	}
+
+	@Benchmark
+	public DubboXid valueOf(){
+		return DubboXid.valueOf(atomikosXid);
+	}
+
+	@Benchmark
+	public int hash(){
+		return equalXid.hashCode();
+	}
+
+	@Benchmark
+	public boolean equalsSame(){
+		return xid.equals(equalXid);
+	}
+
+	@Benchmark
+	public boolean equalsDifferent(){
+		return xid.equals(otherXid);
+	}
+
+	@Benchmark
+	public Object mapLookup(){
+		index = (index + 1) % size;
+		return map.get(keys[index]);
+	}
+
+	@Benchmark
+	public Object mapLookupConverted(){
+		return map.get(DubboXid.valueOf(atomikosXid));
+	}
+}
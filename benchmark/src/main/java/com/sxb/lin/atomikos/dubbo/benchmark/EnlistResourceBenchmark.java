@@ -0,0 +1,87 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.xa.Xid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atomikos.datasource.xa.XID;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceImpl;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
+import com.sxb.lin.atomikos.dubbo.service.DubboXid;
+import com.sxb.lin.atomikos.dubbo.service.StartXid;
+
+/**
+ * DubboTransactionManagerServiceImpl.enlistResource on the tm side,with the xid created by
+ * the tm and with the xid created by the participant (async enlist).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkNode.IGNORE_UNRECOGNIZED_VM_OPTIONS,
+		BenchmarkNode.OPEN_JAVA_LANG, BenchmarkNode.OPEN_JAVA_MATH})
+public class EnlistResourceBenchmark {
+
+	private BenchmarkNode node;
+
+	private DubboTransactionManagerServiceImpl service;
+
+	private String localAddress;
+
+	private String uniqueResourceName;
+
+	private String tid;
+
+	private Xid xid;
+
+	private long counter;
+
+	@Setup(Level.Trial)
+	public void setupTrial() throws Exception {
+		node = BenchmarkNode.start();
+		service = (DubboTransactionManagerServiceImpl) DubboTransactionManagerServiceProxy
+				.getInstance().getLocalDubboTransactionManagerService();
+		localAddress = node.getLocalAddress();
+		uniqueResourceName = node.getUniqueResourceName(0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownTrial(){
+		BenchmarkNode.stop();
+	}
+
+	@Setup(Level.Invocation)
+	public void setup() throws Exception {
+		tid = node.begin();
+		xid = DubboXid.valueOf(new XID(tid, tid + "1c2d3e4f" + (++counter)));
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() throws Exception {
+		node.getUserTransactionManager().rollback();
+	}
+
+	@Benchmark
+	public StartXid enlistResource() throws Exception {
+		return service.enlistResource(localAddress, uniqueResourceName, tid, localAddress);
+	}
+
+	@Benchmark
+	public StartXid enlistResourceWithXid() throws Exception {
+		return service.enlistResource(localAddress, uniqueResourceName, tid, localAddress, xid);
+	}
+}
@@ -0,0 +1,67 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every sample of one phase,percentiles are computed by sorting when reported.
+ */
+public class LatencyRecorder {
+
+	private final String name;
+
+	private long[] samples = new long[1024];
+
+	private int size;
+
+	private boolean recording;
+
+	public LatencyRecorder(String name) {
+		this.name = name;
+	}
+
+	public synchronized void record(long nanos){
+		if(!recording){
+			return;
+		}
+		if(size == samples.length){
+			samples = Arrays.copyOf(samples, size * 2);
+		}
+		samples[size++] = nanos;
+	}
+
+	public synchronized void start(){
+		size = 0;
+		recording = true;
+	}
+
+	public synchronized void stop(){
+		recording = false;
+	}
+
+	public synchronized int getCount(){
+		return size;
+	}
+
+	/**
+	 * name,count,p50,p99,p999 and max in microseconds.
+	 */
+	public synchronized String report(){
+		long[] sorted = Arrays.copyOf(samples, size);
+		Arrays.sort(sorted);
+		return String.format("%-10s %10d %10.1f %10.1f %10.1f %10.1f", name, size,
+				percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+				size == 0 ? 0.0 : sorted[size - 1] / 1000.0);
+	}
+
+	public static String header(){
+		return String.format("%-10s %10s %10s %10s %10s %10s", "phase", "count", "p50(us)", "p99(us)", "p999(us)", "max(us)");
+	}
+
+	private static double percentile(long[] sorted, double p){
+		if(sorted.length == 0){
+			return 0;
+		}
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+	}
+}
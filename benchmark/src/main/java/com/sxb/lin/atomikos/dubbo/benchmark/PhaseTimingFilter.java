@@ -0,0 +1,68 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.util.concurrent.Future;
+
+import com.alibaba.dubbo.remoting.exchange.ResponseCallback;
+import com.alibaba.dubbo.rpc.Filter;
+import com.alibaba.dubbo.rpc.Invocation;
+import com.alibaba.dubbo.rpc.Invoker;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.RpcContext;
+import com.alibaba.dubbo.rpc.RpcException;
+import com.alibaba.dubbo.rpc.protocol.dubbo.FutureAdapter;
+import com.alibaba.dubbo.rpc.support.RpcUtils;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerService;
+
+/**
+ * Times the DubboTransactionManagerService calls seen by the tm: enlistResource served for
+ * the participants,prepare and commit sent to them. Async calls are timed until the response.
+ */
+public class PhaseTimingFilter implements Filter {
+
+	public final static LatencyRecorder ENLIST = new LatencyRecorder("enlist");
+
+	public final static LatencyRecorder PREPARE = new LatencyRecorder("prepare");
+
+	public final static LatencyRecorder COMMIT = new LatencyRecorder("commit");
+
+	public Result invoke(Invoker<?> invoker, Invocation invocation) throws RpcException {
+		if(invoker.getInterface() != DubboTransactionManagerService.class){
+			return invoker.invoke(invocation);
+		}
+		LatencyRecorder recorder = null;
+		String methodName = invocation.getMethodName();
+		if(methodName.equals("enlistResource")){
+			recorder = ENLIST;
+		}else if(methodName.equals("prepare") || methodName.equals("batchPrepare")){
+			recorder = PREPARE;
+		}else if(methodName.equals("commit") || methodName.equals("batchCommit")){
+			recorder = COMMIT;
+		}
+		if(recorder == null){
+			return invoker.invoke(invocation);
+		}
+		final LatencyRecorder phase = recorder;
+		final long start = System.nanoTime();
+		boolean async = false;
+		try {
+			Result result = invoker.invoke(invocation);
+			Future<?> future = RpcContext.getContext().getFuture();
+			if(RpcUtils.isAsync(invoker.getUrl(), invocation) && future instanceof FutureAdapter){
+				async = true;
+				((FutureAdapter<?>) future).getFuture().setCallback(new ResponseCallback() {
+					public void done(Object response) {
+						phase.record(System.nanoTime() - start);
+					}
+					public void caught(Throwable exception) {
+						phase.record(System.nanoTime() - start);
+					}
+				});
+			}
+			return result;
+		} finally {
+			if(!async){
+				phase.record(System.nanoTime() - start);
+			}
+		}
+	}
+}
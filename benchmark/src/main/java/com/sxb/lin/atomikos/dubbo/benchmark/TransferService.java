@@ -0,0 +1,9 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+/**
+ * The initiator's business method: one local update and one remote call per participant.
+ */
+public interface TransferService {
+
+	void transfer();
+}
@@ -0,0 +1,31 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.sxb.lin.atomikos.dubbo.annotation.XA;
+
+public class TransferServiceImpl implements TransferService {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final List<AccountService> accountServices;
+
+	public TransferServiceImpl(DataSource dataSource, List<AccountService> accountServices) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.accountServices = accountServices;
+	}
+
+	@XA
+	@Transactional
+	public void transfer() {
+		jdbcTemplate.update("update account set amount = amount - ? where id = 1", accountServices.size());
+		for(AccountService accountService : accountServices){
+			accountService.increment(1);
+		}
+	}
+}
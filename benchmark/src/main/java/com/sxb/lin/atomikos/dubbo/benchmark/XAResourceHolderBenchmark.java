@@ -0,0 +1,116 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sxb.lin.atomikos.dubbo.ParticipantXATransactionLocal;
+import com.sxb.lin.atomikos.dubbo.pool.JdbcXAResourceHolder;
+
+/**
+ * XAResourceHolder start/end/prepare/commit against H2 through the local node.
+ * onePhase and twoPhase time a whole participant branch including the Atomikos commit,
+ * startEnd only the xa start (which enlists the branch with the tm) and end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkNode.IGNORE_UNRECOGNIZED_VM_OPTIONS,
+		BenchmarkNode.OPEN_JAVA_LANG, BenchmarkNode.OPEN_JAVA_MATH})
+public class XAResourceHolderBenchmark {
+
+	private BenchmarkNode node;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		node = BenchmarkNode.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownTrial(){
+		BenchmarkNode.stop();
+	}
+
+	@Benchmark
+	public void onePhase() throws Exception {
+		String tid = node.begin();
+		try {
+			this.branch(tid, 0);
+		} catch (Exception e) {
+			node.getUserTransactionManager().rollback();
+			throw e;
+		}
+		node.getUserTransactionManager().commit();
+	}
+
+	@Benchmark
+	public void twoPhase() throws Exception {
+		String tid = node.begin();
+		try {
+			this.branch(tid, 0);
+			this.branch(tid, 1);
+		} catch (Exception e) {
+			node.getUserTransactionManager().rollback();
+			throw e;
+		}
+		node.getUserTransactionManager().commit();
+	}
+
+	private void branch(String tid, int database) throws Exception {
+		ParticipantXATransactionLocal local = node.bindParticipant(tid);
+		try {
+			JdbcXAResourceHolder xaResourceHolder = node.createXAResourceHolder(database);
+			xaResourceHolder.start();
+			BenchmarkNode.update(xaResourceHolder);
+			xaResourceHolder.end();
+		} finally {
+			local.restoreThreadLocalStatus();
+		}
+	}
+
+	@Benchmark
+	public void startEnd(Branch branch) throws Exception {
+		branch.xaResourceHolder.start();
+		branch.xaResourceHolder.end();
+	}
+
+	@State(Scope.Thread)
+	public static class Branch {
+
+		private BenchmarkNode node;
+
+		private ParticipantXATransactionLocal local;
+
+		private JdbcXAResourceHolder xaResourceHolder;
+
+		@Setup(Level.Trial)
+		public void setupTrial() throws Exception {
+			node = BenchmarkNode.start();
+		}
+
+		@Setup(Level.Invocation)
+		public void setup() throws Exception {
+			local = node.bindParticipant(node.begin());
+			xaResourceHolder = node.createXAResourceHolder(0);
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() throws Exception {
+			local.restoreThreadLocalStatus();
+			node.getUserTransactionManager().commit();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.sxb.lin.atomikos.dubbo.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atomikos.datasource.xa.XID;
+import com.sxb.lin.atomikos.dubbo.ParticipantXATransactionLocal;
+import com.sxb.lin.atomikos.dubbo.pool.XAResourceHolder;
+import com.sxb.lin.atomikos.dubbo.pool.XAResourcePool;
+import com.sxb.lin.atomikos.dubbo.pool.recover.UniqueResource;
+import com.sxb.lin.atomikos.dubbo.service.DubboXid;
+import com.sxb.lin.atomikos.dubbo.service.StartXid;
+
+/**
+ * Lookups and churn of XAResourcePool with pooled holders spread over several tm addresses.
+ * The holders do no xa work,only the pool bookkeeping is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XAResourcePoolBenchmark {
+
+	private final static int TM_ADDRESSES = 8;
+
+	@Param({"64", "4096"})
+	private int poolSize;
+
+	private XAResourcePool xaResourcePool;
+
+	private Xid[] xids;
+
+	private String[] tmAddresses;
+
+	@Setup
+	public void setup() throws XAException {
+		xaResourcePool = new XAResourcePool(new HashMap<String, UniqueResource>());
+		tmAddresses = new String[TM_ADDRESSES];
+		for(int i = 0;i < TM_ADDRESSES;i++){
+			tmAddresses[i] = "192.168.1." + (100 + i) + ":20880";
+		}
+		xids = new Xid[poolSize];
+		for(int i = 0;i < poolSize;i++){
+			xids[i] = xid(i);
+			xaResourcePool.addXAResourceHolder(createXAResourceHolder(tmAddresses[i % TM_ADDRESSES], xids[i]));
+		}
+	}
+
+	@TearDown
+	public void tearDown(){
+		xaResourcePool.close();
+	}
+
+	private static Xid xid(long i){
+		String tid = "192.168.1.100.tm" + (1539250346562L + i);
+		return DubboXid.valueOf(new XID(tid, tid + "1c2d3e4f" + i));
+	}
+
+	private static XAResourceHolder createXAResourceHolder(String tmAddress, Xid xid){
+		ParticipantXATransactionLocal local = new ParticipantXATransactionLocal();
+		local.setTmAddress(tmAddress);
+		local.setTid(new String(xid.getGlobalTransactionId()));
+		local.bindToThread();
+		try {
+			return new NoopXAResourceHolder(xid);
+		} finally {
+			local.restoreThreadLocalStatus();
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int prepare(ThreadIndex threadIndex) throws XAException {
+		return xaResourcePool.prepare(xids[threadIndex.next(poolSize)]);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public List<XAResourceHolder> getDisconnectedHolderByTmAddress(ThreadIndex threadIndex) {
+		return xaResourcePool.getDisconnectedHolderByTmAddress(tmAddresses[threadIndex.next(TM_ADDRESSES)]);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void addRemove(ThreadIndex threadIndex) {
+		XAResourceHolder xaResourceHolder = createXAResourceHolder(
+				tmAddresses[threadIndex.next(TM_ADDRESSES)], xid(poolSize + threadIndex.sequence()));
+		xaResourcePool.addXAResourceHolder(xaResourceHolder);
+		xaResourcePool.removeXAResourceHolder(xaResourceHolder);
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadIndex {
+
+		private static long threads;
+
+		private long sequence;
+
+		private int index;
+
+		@Setup
+		public void setup(){
+			synchronized (ThreadIndex.class) {
+				sequence = (threads++) << 40;
+			}
+		}
+
+		int next(int bound){
+			index = (index + 1) % bound;
+			return index;
+		}
+
+		long sequence(){
+			return ++sequence;
+		}
+	}
+
+	private static class NoopXAResourceHolder extends XAResourceHolder {
+
+		private final StartXid startXid;
+
+		NoopXAResourceHolder(Xid xid) {
+			super("benchmark", xid.toString(), null);
+			this.startXid = new StartXid();
+			startXid.setXid(xid);
+			startXid.setFlags(XAResource.TMNOFLAGS);
+			startXid.setStartTime(System.currentTimeMillis());
+			startXid.setTimeout(Integer.MAX_VALUE);
+		}
+
+		@Override
+		public StartXid getStartXid() {
+			return startXid;
+		}
+
+		@Override
+		public int prepare(Xid xid) throws XAException {
+			return XAResource.XA_OK;
+		}
+
+		@Override
+		protected void disconnect() {
+
+		}
+
+		@Override
+		protected void doClose() {
+
+		}
+	}
+}
@@ -0,0 +1,433 @@
+package com.sxb.lin.atomikos.dubbo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.dubbo.common.io.Bytes;
+import com.atomikos.datasource.xa.XID;
+import com.sxb.lin.atomikos.dubbo.service.DubboXid;
+
+/**
+ * Phase two commits of remote branches, executed by a bounded worker pool after the
+ * commit record has been forced to disk. Records are replayed on startup until the
+ * participant has acknowledged the commit. Heuristic outcomes can not reach the coordinator
+ * log any more,they are written to dubbo-async-commit-heuristic.log.
+ */
+public class AsyncCommitQueue {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncCommitQueue.class);
+
+	private final static String FILE_NAME = "dubbo-async-commit.log";
+
+	private final static String COMMIT = "C";
+
+	private final static String DONE = "D";
+
+	private final static String HEURISTIC_FILE_NAME = "dubbo-async-commit-heuristic.log";
+
+	private final static String SEPARATOR = "\t";
+
+	private final static int MIN_COMPACT_RECORDS = 1024;
+
+	private final static long MIN_RETRY_DELAY = 1000;
+
+	private final static long MAX_RETRY_DELAY = 30000;
+
+	private final Map<String, AsyncCommitTask> pending = new ConcurrentHashMap<String, AsyncCommitTask>();
+
+	private final File file;
+
+	private final File heuristicFile;
+
+	private final ThreadPoolExecutor executor;
+
+	private final ScheduledExecutorService retryExecutor;
+
+	private final Object forceLock = new Object();
+
+	private FileChannel channel;
+
+	private long written;
+
+	private long forced;
+
+	private int doneRecords;
+
+	public AsyncCommitQueue(String logBaseDir, int threads, int queueSize) {
+		this.file = new File(logBaseDir, FILE_NAME);
+		this.heuristicFile = new File(logBaseDir, HEURISTIC_FILE_NAME);
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new DaemonThreadFactory("DubboXAAsyncCommit-"), 
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		this.retryExecutor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("DubboXAAsyncCommitRetry-"));
+	}
+
+	public synchronized void init() throws IOException {
+		if(channel != null){
+			return;
+		}
+		Map<String, String[]> records = this.read();
+		File dir = file.getParentFile();
+		if(dir != null && !dir.exists()){
+			dir.mkdirs();
+		}
+		List<String> lines = new ArrayList<String>(records.size());
+		for(String[] record : records.values()){
+			lines.add(this.commitLine(record[0], record[1], record[2]));
+		}
+		this.rewrite(lines);
+		for(String[] record : records.values()){
+			DubboXAResourceImpl xaResource = new DubboXAResourceImpl(record[0], record[1]);
+			AsyncCommitTask task = new AsyncCommitTask(xaResource, this.xid(record[2]));
+			pending.put(task.key, task);
+			LOGGER.warn("replay async commit " + task.key + " to " + record[0]);
+			executor.execute(task);
+		}
+	}
+
+	private Map<String, String[]> read() throws IOException {
+		Map<String, String[]> records = new LinkedHashMap<String, String[]>();
+		if(!file.exists()){
+			return records;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line = null;
+			while((line = reader.readLine()) != null){
+				String[] array = line.split(SEPARATOR, -1);
+				if(array.length == 6 && COMMIT.equals(array[0])){
+					String key = this.key(array[3], array[4], array[5]);
+					records.put(key, new String[]{array[1], array[2], key});
+				}else if(array.length == 4 && DONE.equals(array[0])){
+					records.remove(this.key(array[1], array[2], array[3]));
+				}else if(array.length == 5 && COMMIT.equals(array[0])){
+					//written before the xid was hex encoded
+					String key = this.key(new XID(array[3], array[4]));
+					records.put(key, new String[]{array[1], array[2], key});
+				}else if(array.length == 3 && DONE.equals(array[0])){
+					records.remove(this.key(new XID(array[1], array[2])));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return records;
+	}
+
+	public void commit(DubboXAResourceImpl xaResource, Xid xid) throws XAException {
+		AsyncCommitTask task = new AsyncCommitTask(xaResource, xid);
+		try {
+			long sequence;
+			synchronized (this) {
+				if(channel == null){
+					throw new IOException("async commit queue is not init.");
+				}
+				this.write(task.line());
+				sequence = ++written;
+				pending.put(task.key, task);
+			}
+			this.force(sequence);
+		} catch (IOException e) {
+			pending.remove(task.key);
+			LOGGER.error("async commit record can not be written,commit " + task.key + " synchronously.", e);
+			xaResource.doCommit(xid, false);
+			return;
+		}
+		executor.execute(task);
+	}
+	
+	/**
+	 * group commit: one force covers every record written before it started,
+	 * callers whose record is already covered return without forcing again.
+	 */
+	private void force(long sequence) throws IOException {
+		synchronized (forceLock) {
+			if(forced >= sequence){
+				return;
+			}
+			while(true){
+				long target;
+				FileChannel forceChannel;
+				synchronized (this) {
+					target = written;
+					forceChannel = channel;
+				}
+				if(forceChannel == null){
+					throw new IOException("async commit queue is closed.");
+				}
+				try {
+					forceChannel.force(false);
+				} catch (ClosedChannelException e) {
+					//replaced by a compaction,which forced the pending records to the new file
+					continue;
+				}
+				forced = target;
+				return;
+			}
+		}
+	}
+
+	public boolean isPending(Xid xid){
+		return pending.containsKey(this.key(xid));
+	}
+
+	public Xid[] filterPending(Xid[] xids){
+		if(xids == null || pending.isEmpty()){
+			return xids;
+		}
+		List<Xid> list = new ArrayList<Xid>(xids.length);
+		for(Xid xid : xids){
+			if(!this.isPending(xid)){
+				list.add(xid);
+			}
+		}
+		return list.toArray(new Xid[list.size()]);
+	}
+
+	public int getPendingSize(){
+		return pending.size();
+	}
+
+	public void close(){
+		retryExecutor.shutdownNow();
+		executor.shutdown();
+		synchronized (this) {
+			if(channel != null){
+				try {
+					channel.close();
+				} catch (IOException e) {
+					LOGGER.error(e.getMessage(), e);
+				}
+				channel = null;
+			}
+		}
+	}
+
+	private void done(AsyncCommitTask task){
+		synchronized (this) {
+			pending.remove(task.key);
+			if(channel == null){
+				return;
+			}
+			try {
+				if(pending.isEmpty()){
+					channel.truncate(0);
+					doneRecords = 0;
+				}else{
+					this.write(DONE + SEPARATOR + task.key);
+					doneRecords++;
+					if(doneRecords >= MIN_COMPACT_RECORDS && doneRecords >= pending.size() * 2){
+						this.compact();
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * rewrites the file with the commit records still pending,so it does not grow
+	 * while pending never runs empty under steady load.
+	 */
+	private void compact() throws IOException {
+		List<String> lines = new ArrayList<String>(pending.size());
+		for(AsyncCommitTask task : pending.values()){
+			lines.add(task.line());
+		}
+		this.rewrite(lines);
+	}
+	
+	/**
+	 * the lines are forced to a temp file first,which then replaces the log in one atomic move.
+	 * a crash never leaves a log without the records.
+	 */
+	private void rewrite(List<String> lines) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileChannel tempChannel = new RandomAccessFile(temp, "rw").getChannel();
+		try {
+			tempChannel.truncate(0);
+			StringBuilder builder = new StringBuilder();
+			for(String line : lines){
+				builder.append(line).append("\n");
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes("UTF-8"));
+			while(buffer.hasRemaining()){
+				tempChannel.write(buffer);
+			}
+			tempChannel.force(false);
+		} finally {
+			tempChannel.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		if(channel != null){
+			channel.close();
+		}
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		doneRecords = 0;
+	}
+
+	/**
+	 * atomikos was told the branch committed,so a heuristic outcome is only kept in
+	 * dubbo-async-commit-heuristic.log: errorCode,time,remote address,resource and xid.
+	 */
+	private void heuristic(AsyncCommitTask task, int errorCode){
+		String line = errorCode + SEPARATOR + System.currentTimeMillis() + SEPARATOR + task.xaResource.getRemoteAddress() 
+				+ SEPARATOR + task.xaResource.getUniqueResourceName() + SEPARATOR + task.key + "\n";
+		synchronized (heuristicFile) {
+			FileOutputStream out = null;
+			try {
+				out = new FileOutputStream(heuristicFile, true);
+				out.write(line.getBytes("UTF-8"));
+				out.getFD().sync();
+			} catch (IOException e) {
+				LOGGER.error("heuristic outcome of async commit " + task.key + " can not be written.", e);
+			} finally {
+				if(out != null){
+					try {
+						out.close();
+					} catch (IOException e) {
+						LOGGER.error(e.getMessage(), e);
+					}
+				}
+			}
+		}
+	}
+
+	private void retry(final AsyncCommitTask task){
+		task.retries++;
+		long delay = Math.min(MIN_RETRY_DELAY << Math.min(task.retries, 5), MAX_RETRY_DELAY);
+		LOGGER.warn("async commit " + task.key + " fail " + task.retries + " times,retry after " + delay + " ms.");
+		if(retryExecutor.isShutdown()){
+			return;
+		}
+		retryExecutor.schedule(new Runnable() {
+			public void run() {
+				executor.execute(task);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void write(String line) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes("UTF-8"));
+		channel.position(channel.size());
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+	}
+
+	private String commitLine(String remoteAddress, String uniqueResourceName, String key){
+		return COMMIT + SEPARATOR + remoteAddress + SEPARATOR + uniqueResourceName + SEPARATOR + key;
+	}
+
+	/**
+	 * formatId,gtrid and bqual in hex,so any byte of the xid survives the line format.
+	 */
+	private String key(Xid xid){
+		return this.key(String.valueOf(xid.getFormatId()), Bytes.bytes2hex(DubboXid.globalTransactionIdOf(xid)), 
+				Bytes.bytes2hex(DubboXid.branchQualifierOf(xid)));
+	}
+
+	private String key(String formatId, String globalTransactionId, String branchQualifier){
+		return formatId + SEPARATOR + globalTransactionId + SEPARATOR + branchQualifier;
+	}
+	
+	private Xid xid(String key){
+		String[] array = key.split(SEPARATOR, -1);
+		return new DubboXid(Integer.parseInt(array[0]), Bytes.hex2bytes(array[1]), Bytes.hex2bytes(array[2]));
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		
+		private final String prefix;
+		
+		private final AtomicInteger counter = new AtomicInteger();
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private class AsyncCommitTask implements Runnable {
+
+		private final DubboXAResourceImpl xaResource;
+
+		private final Xid xid;
+
+		private final String key;
+
+		private int retries;
+
+		AsyncCommitTask(DubboXAResourceImpl xaResource, Xid xid) {
+			this.xaResource = xaResource;
+			this.xid = xid;
+			this.key = key(xid);
+		}
+
+		String line(){
+			return commitLine(xaResource.getRemoteAddress(), xaResource.getUniqueResourceName(), key);
+		}
+
+		public void run() {
+			try {
+				xaResource.doCommit(xid, false);
+				done(this);
+			} catch (XAException e) {
+				switch (e.errorCode) {
+				case XAException.XAER_NOTA:
+				case XAException.XA_HEURCOM:
+					done(this);
+					break;
+				case XAException.XA_HEURRB:
+				case XAException.XA_HEURMIX:
+				case XAException.XA_HEURHAZ:
+					LOGGER.error("async commit " + key + " end with heuristic error " + e.errorCode + ".", e);
+					heuristic(this, e.errorCode);
+					done(this);
+					break;
+				default:
+					LOGGER.error(e.getMessage(), e);
+					retry(this);
+					break;
+				}
+			} catch (RuntimeException e) {
+				LOGGER.error(e.getMessage(), e);
+				retry(this);
+			}
+		}
+	}
+}
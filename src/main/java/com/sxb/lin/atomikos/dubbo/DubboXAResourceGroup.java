@@ -0,0 +1,281 @@
+package com.sxb.lin.atomikos.dubbo;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
+import com.sxb.lin.atomikos.dubbo.service.XidResult;
+
+/**
+ * All branches of one global transaction that live on the same participant node.
+ * The first prepare, commit or rollback of a member sends the command for every member
+ * in one rpc, later members only pick up their own result. When the transaction spans
+ * several nodes the first prepare also sends the batch prepare of the other nodes concurrently.
+ */
+public class DubboXAResourceGroup {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(DubboXAResourceGroup.class);
+	
+	private final static int PREPARE = 1;
+	
+	private final static int COMMIT = 2;
+	
+	private final static int ROLLBACK = 3;
+
+	private final String tid;
+
+	private final String remoteAddress;
+
+	private final List<DubboXAResourceImpl> members = new ArrayList<DubboXAResourceImpl>();
+
+	private Map<DubboXAResourceImpl, XidResult> prepareResults;
+
+	private Map<DubboXAResourceImpl, XidResult> commitResults;
+
+	private Map<DubboXAResourceImpl, XidResult> rollbackResults;
+
+	private Map<DubboXAResourceImpl, Integer> votes = new IdentityHashMap<DubboXAResourceImpl, Integer>();
+	
+	private List<DubboXAResourceImpl> fanOutMembers;
+	
+	private final Map<String, DubboXAResourceGroup> groups;
+
+	public DubboXAResourceGroup(String tid, String remoteAddress) {
+		this(tid, remoteAddress, null);
+	}
+	
+	public DubboXAResourceGroup(String tid, String remoteAddress, Map<String, DubboXAResourceGroup> groups) {
+		this.tid = tid;
+		this.remoteAddress = remoteAddress;
+		this.groups = groups;
+	}
+
+	public synchronized void add(DubboXAResourceImpl xaResource){
+		members.add(xaResource);
+		xaResource.setGroup(this);
+	}
+
+	int prepare(DubboXAResourceImpl member, Xid xid) throws XAException {
+		if(groups != null && groups.size() > 1){
+			synchronized (groups) {
+				this.fanOutPrepare();
+			}
+		}
+		synchronized (this) {
+			if(prepareResults == null && members.size() > 1){
+				prepareResults = this.batchPrepare();
+			}
+			XidResult result = prepareResults == null ? null : prepareResults.remove(member);
+			int vote;
+			if(result == null){
+				vote = DubboTransactionManagerServiceProxy.getInstance()
+						.prepare(remoteAddress, member.getUniqueResourceName(), xid);
+			}else if(result.isSuccess()){
+				vote = result.getVote();
+			}else{
+				throw result.toXAException();
+			}
+			votes.put(member, vote);
+			return vote;
+		}
+	}
+	
+	/**
+	 * send the batch prepare of every node of the transaction at the same time,
+	 * at most maxPrepareFanOut requests are in flight.
+	 */
+	private void fanOutPrepare(){
+		int maxPrepareFanOut = DubboTransactionManagerServiceProxy.getInstance().getMaxPrepareFanOut();
+		if(maxPrepareFanOut <= 1){
+			return;
+		}
+		List<DubboXAResourceGroup> list = new ArrayList<DubboXAResourceGroup>();
+		for(DubboXAResourceGroup group : groups.values()){
+			if(!group.isPrepareStarted()){
+				list.add(group);
+			}
+		}
+		if(list.size() <= 1){
+			return;
+		}
+		int size = list.size();
+		for(int i = 0;i < size;i += maxPrepareFanOut){
+			List<DubboXAResourceGroup> wave = list.subList(i, Math.min(i + maxPrepareFanOut, size));
+			List<Future<XidResult[]>> futures = new ArrayList<Future<XidResult[]>>(wave.size());
+			for(DubboXAResourceGroup group : wave){
+				futures.add(group.startBatchPrepare());
+			}
+			for(int j = 0;j < wave.size();j++){
+				wave.get(j).finishBatchPrepare(futures.get(j));
+			}
+		}
+	}
+	
+	private synchronized boolean isPrepareStarted(){
+		return prepareResults != null || fanOutMembers != null;
+	}
+	
+	private synchronized Future<XidResult[]> startBatchPrepare(){
+		fanOutMembers = this.getPrepareMembers();
+		if(fanOutMembers.size() == 0){
+			return null;
+		}
+		try {
+			return DubboTransactionManagerServiceProxy.getInstance().asyncBatchPrepare(remoteAddress, 
+					this.getUniqueResourceNames(fanOutMembers), this.getXids(fanOutMembers));
+		} catch (RuntimeException e) {
+			LOGGER.warn("async batch prepare " + tid + " on " + remoteAddress + " fail.", e);
+			fanOutMembers = new ArrayList<DubboXAResourceImpl>();
+			return null;
+		}
+	}
+	
+	private synchronized void finishBatchPrepare(Future<XidResult[]> future){
+		Map<DubboXAResourceImpl, XidResult> results = new IdentityHashMap<DubboXAResourceImpl, XidResult>();
+		try {
+			XidResult[] xidResults = null;
+			if(fanOutMembers.size() == 0){
+				xidResults = new XidResult[0];
+			}else if(future == null){
+				xidResults = DubboTransactionManagerServiceProxy.getInstance().batchPrepare(remoteAddress, 
+						this.getUniqueResourceNames(fanOutMembers), this.getXids(fanOutMembers));
+			}else{
+				xidResults = future.get();
+			}
+			for(int i = 0;i < xidResults.length;i++){
+				results.put(fanOutMembers.get(i), xidResults[i]);
+			}
+		} catch (Exception e) {
+			LOGGER.warn("batch prepare " + tid + " on " + remoteAddress + " fail,prepare one by one.", e);
+		}
+		prepareResults = results;
+	}
+
+	synchronized void commit(DubboXAResourceImpl member, Xid xid) throws XAException {
+		if(commitResults == null && members.size() > 1){
+			commitResults = this.batchCommit();
+		}
+		XidResult result = commitResults == null ? null : commitResults.remove(member);
+		if(result == null){
+			DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
+			if(!instance.wasTerminated(member.getUniqueResourceName(), xid)){
+				instance.commit(remoteAddress, member.getUniqueResourceName(), xid, false);
+			}
+		}else if(!result.isSuccess()){
+			throw result.toXAException();
+		}
+	}
+
+	synchronized void rollback(DubboXAResourceImpl member, Xid xid) throws XAException {
+		if(rollbackResults == null && members.size() > 1){
+			rollbackResults = this.batchRollback();
+		}
+		XidResult result = rollbackResults == null ? null : rollbackResults.remove(member);
+		if(result == null){
+			DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
+			if(!instance.wasTerminated(member.getUniqueResourceName(), xid)){
+				instance.rollback(remoteAddress, member.getUniqueResourceName(), xid);
+			}
+		}else if(!result.isSuccess()){
+			throw result.toXAException();
+		}
+	}
+
+	private Map<DubboXAResourceImpl, XidResult> batchPrepare() throws XAException {
+		return this.execute(this.getPrepareMembers(), PREPARE);
+	}
+	
+	private List<DubboXAResourceImpl> getPrepareMembers(){
+		List<DubboXAResourceImpl> list = new ArrayList<DubboXAResourceImpl>();
+		for(DubboXAResourceImpl member : members){
+			if(member.getStartXid() != null){
+				list.add(member);
+			}
+		}
+		return list;
+	}
+
+	private Map<DubboXAResourceImpl, XidResult> batchCommit() throws XAException {
+		DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
+		List<DubboXAResourceImpl> list = new ArrayList<DubboXAResourceImpl>();
+		for(DubboXAResourceImpl member : members){
+			Integer vote = votes.get(member);
+			if(vote != null && vote.intValue() == XAResource.XA_OK
+					&& !instance.wasTerminated(member.getUniqueResourceName(), member.getStartXid().getXid())){
+				list.add(member);
+			}
+		}
+		return this.execute(list, COMMIT);
+	}
+
+	private Map<DubboXAResourceImpl, XidResult> batchRollback() throws XAException {
+		DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
+		List<DubboXAResourceImpl> list = new ArrayList<DubboXAResourceImpl>();
+		for(DubboXAResourceImpl member : members){
+			Integer vote = votes.get(member);
+			if(member.getStartXid() != null && (vote == null || vote.intValue() != XAResource.XA_RDONLY)
+					&& !instance.wasTerminated(member.getUniqueResourceName(), member.getStartXid().getXid())){
+				list.add(member);
+			}
+		}
+		return this.execute(list, ROLLBACK);
+	}
+
+	private Map<DubboXAResourceImpl, XidResult> execute(List<DubboXAResourceImpl> list, int command) throws XAException {
+		Map<DubboXAResourceImpl, XidResult> results = new IdentityHashMap<DubboXAResourceImpl, XidResult>();
+		if(list.size() == 0){
+			return results;
+		}
+		int size = list.size();
+		String[] uniqueResourceNames = this.getUniqueResourceNames(list);
+		Xid[] xids = this.getXids(list);
+
+		DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
+		XidResult[] xidResults;
+		if(command == PREPARE){
+			xidResults = instance.batchPrepare(remoteAddress, uniqueResourceNames, xids);
+		}else if(command == COMMIT){
+			xidResults = instance.batchCommit(remoteAddress, uniqueResourceNames, xids);
+		}else{
+			xidResults = instance.batchRollback(remoteAddress, uniqueResourceNames, xids);
+		}
+		for(int i = 0;i < size;i++){
+			results.put(list.get(i), xidResults[i]);
+		}
+		return results;
+	}
+
+	private String[] getUniqueResourceNames(List<DubboXAResourceImpl> list){
+		String[] uniqueResourceNames = new String[list.size()];
+		for(int i = 0;i < uniqueResourceNames.length;i++){
+			uniqueResourceNames[i] = list.get(i).getUniqueResourceName();
+		}
+		return uniqueResourceNames;
+	}
+	
+	private Xid[] getXids(List<DubboXAResourceImpl> list){
+		Xid[] xids = new Xid[list.size()];
+		for(int i = 0;i < xids.length;i++){
+			xids[i] = list.get(i).getStartXid().getXid();
+		}
+		return xids;
+	}
+
+	public String getTid() {
+		return tid;
+	}
+
+	public String getRemoteAddress() {
+		return remoteAddress;
+	}
+}
@@ -1,21 +1,51 @@
 package com.sxb.lin.atomikos.dubbo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.dubbo.rpc.RpcException;
+import com.atomikos.datasource.xa.XID;
+import com.atomikos.icatch.config.Configuration;
+import com.sxb.lin.atomikos.dubbo.pool.XidFilter;
+import com.sxb.lin.atomikos.dubbo.rocketmq.MQProducerFor2PC;
 import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
 import com.sxb.lin.atomikos.dubbo.service.DubboXid;
+import com.sxb.lin.atomikos.dubbo.service.RecoverPage;
 import com.sxb.lin.atomikos.dubbo.service.StartXid;
+import com.sxb.lin.atomikos.dubbo.trace.Span;
+import com.sxb.lin.atomikos.dubbo.trace.TraceContext;
+import com.sxb.lin.atomikos.dubbo.trace.XATracer;
 
 public class DubboXAResourceImpl implements XAResource{
 	
+	private static final Logger LOGGER = LoggerFactory.getLogger(DubboXAResourceImpl.class);
+	
+	private final static int RECOVER_PAGE_SIZE = 500;
+	
+	private final static int XID_FORMAT_ID = new XID("", "").getFormatId();
+	
 	private StartXid startXid;
 	
 	private String remoteAddress;
 	
 	private String uniqueResourceName;
 	
+	private DubboXAResourceGroup group;
+	
+	private Span span;
+	
+	private String recoverCursor;
+	
+	private boolean legacyRecover;
+	
 	public DubboXAResourceImpl(String uniqueResourceName) {
 		this(null,uniqueResourceName);
 	}
@@ -26,33 +56,95 @@ public class DubboXAResourceImpl implements XAResource{
 	}
 	
 	public int prepare(Xid xid) throws XAException {
-		return DubboTransactionManagerServiceProxy.getInstance().prepare(remoteAddress, uniqueResourceName, xid);
+		TraceContext old = this.bindSpan();
+		try {
+			int prepare;
+			if(group != null){
+				prepare = group.prepare(this, xid);
+			}else{
+				prepare = DubboTransactionManagerServiceProxy.getInstance().prepare(remoteAddress, uniqueResourceName, xid);
+			}
+			if(prepare == XAResource.XA_RDONLY){
+				this.finishSpan("rdonly");
+			}
+			return prepare;
+		} finally {
+			this.restoreSpan(old);
+		}
 	}
 
 	public void commit(Xid xid, boolean onePhase) throws XAException {
-		DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
-		if(!instance.wasTerminated(uniqueResourceName, xid)){
-			instance.commit(remoteAddress, uniqueResourceName, xid, onePhase);
+		AsyncCommitQueue asyncCommitQueue = DubboTransactionManagerServiceProxy.getInstance().getAsyncCommitQueue();
+		if(asyncCommitQueue != null && !onePhase && !uniqueResourceName.startsWith(MQProducerFor2PC.MQ_UNIQUE_TOPIC_PREFIX)){
+			asyncCommitQueue.commit(this, xid);
+			return;
+		}
+		this.doCommit(xid, onePhase);
+	}
+	
+	void doCommit(Xid xid, boolean onePhase) throws XAException {
+		TraceContext old = this.bindSpan();
+		boolean success = false;
+		try {
+			if(group != null && !onePhase){
+				group.commit(this, xid);
+			}else{
+				DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
+				if(!instance.wasTerminated(uniqueResourceName, xid)){
+					instance.commit(remoteAddress, uniqueResourceName, xid, onePhase);
+				}
+			}
+			success = true;
+		} finally {
+			this.restoreSpan(old);
+			this.finishSpan(success ? "committed" : "commit fail");
 		}
 	}
 	
 	public void rollback(Xid xid) throws XAException {
-		DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
-		if(!instance.wasTerminated(uniqueResourceName, xid)){
-			instance.rollback(remoteAddress, uniqueResourceName, xid);
+		TraceContext old = this.bindSpan();
+		boolean success = false;
+		try {
+			if(group != null){
+				group.rollback(this, xid);
+			}else{
+				DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
+				if(!instance.wasTerminated(uniqueResourceName, xid)){
+					instance.rollback(remoteAddress, uniqueResourceName, xid);
+				}
+			}
+			success = true;
+		} finally {
+			this.restoreSpan(old);
+			this.finishSpan(success ? "rolledback" : "rollback fail");
+		}
+	}
+	
+	/**
+	 * phase two calls of the branch are children of the branch span.
+	 */
+	private TraceContext bindSpan(){
+		if(span == null){
+			return null;
+		}
+		return XATracer.bind(span.getContext());
+	}
+	
+	private void restoreSpan(TraceContext old){
+		if(span != null){
+			XATracer.restore(old);
+		}
+	}
+	
+	private void finishSpan(String result){
+		if(span != null){
+			span.finish(result);
 		}
 	}
 	
 	public void start(Xid xid, int flags) throws XAException {
-		DubboXid dubboXid = new DubboXid();
-		dubboXid.setFormatId(xid.getFormatId());
-		dubboXid.setBranchQualifier(xid.getBranchQualifier());
-		dubboXid.setGlobalTransactionId(xid.getGlobalTransactionId());
-		dubboXid.setBranchQualifierStr(new String(xid.getBranchQualifier()));
-		dubboXid.setGlobalTransactionIdStr(new String(xid.getGlobalTransactionId()));
-		
 		startXid = new StartXid();
-		startXid.setXid(dubboXid);
+		startXid.setXid(DubboXid.valueOf(xid));
 		startXid.setFlags(flags);
 	}
 
@@ -61,7 +153,71 @@ public class DubboXAResourceImpl implements XAResource{
 	}
 	
 	public Xid[] recover(int flag) throws XAException {
-		return DubboTransactionManagerServiceProxy.getInstance().recover(remoteAddress, uniqueResourceName, flag);
+		DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
+		Xid[] xids = this.recoverPage(instance, flag);
+		AsyncCommitQueue asyncCommitQueue = instance.getAsyncCommitQueue();
+		if(asyncCommitQueue != null){
+			xids = asyncCommitQueue.filterPending(xids);
+		}
+		return xids;
+	}
+
+	/**
+	 * TMSTARTRSCAN starts a paged scan of this tm's xids,every TMNOFLAGS reads the next page
+	 * until an empty one. TMSTARTRSCAN with TMENDRSCAN reads all the pages at once.
+	 * a tm node of an older version has no paged recover,the scan then uses its recover(flag)
+	 * and the xids of other coordinators are dropped here.
+	 */
+	private Xid[] recoverPage(DubboTransactionManagerServiceProxy instance, int flag) throws XAException {
+		if((flag & XAResource.TMSTARTRSCAN) != 0){
+			recoverCursor = null;
+			legacyRecover = false;
+		}else if(legacyRecover){
+			return this.legacyRecover(instance, flag);
+		}else if(recoverCursor == null){
+			return new Xid[0];
+		}
+		String tidPrefix = Configuration.getConfigProperties().getTmUniqueName();
+		RecoverPage page = null;
+		try {
+			page = instance.recover(remoteAddress, uniqueResourceName, XID_FORMAT_ID, 
+					tidPrefix, recoverCursor, RECOVER_PAGE_SIZE);
+		} catch (RpcException e) {
+			if(!DubboTransactionManagerServiceProxy.isMethodNotFound(e)){
+				throw e;
+			}
+			LOGGER.warn("{} of {} has no paged recover,use recover({}).", uniqueResourceName, remoteAddress, flag);
+			legacyRecover = true;
+			return this.legacyRecover(instance, flag);
+		}
+		recoverCursor = page.getCursor();
+		Xid[] xids = page.getXids();
+		if((flag & XAResource.TMENDRSCAN) != 0){
+			List<Xid> all = new ArrayList<Xid>(Arrays.asList(xids));
+			while(recoverCursor != null){
+				page = instance.recover(remoteAddress, uniqueResourceName, XID_FORMAT_ID, 
+						tidPrefix, recoverCursor, RECOVER_PAGE_SIZE);
+				recoverCursor = page.getCursor();
+				all.addAll(Arrays.asList(page.getXids()));
+			}
+			xids = all.toArray(new Xid[all.size()]);
+		}
+		return xids;
+	}
+	
+	private Xid[] legacyRecover(DubboTransactionManagerServiceProxy instance, int flag) throws XAException {
+		Xid[] xids = instance.recover(remoteAddress, uniqueResourceName, flag);
+		if(xids == null || xids.length == 0){
+			return new Xid[0];
+		}
+		XidFilter filter = new XidFilter(XID_FORMAT_ID, Configuration.getConfigProperties().getTmUniqueName());
+		List<Xid> accepted = new ArrayList<Xid>(xids.length);
+		for(Xid xid : xids){
+			if(filter.accept(xid)){
+				accepted.add(xid);
+			}
+		}
+		return accepted.toArray(new Xid[accepted.size()]);
 	}
 
 	public void forget(Xid xid) throws XAException {
@@ -85,4 +241,27 @@ public class DubboXAResourceImpl implements XAResource{
 	public StartXid getStartXid() {
 		return startXid;
 	}
+
+	public String getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	public String getUniqueResourceName() {
+		return uniqueResourceName;
+	}
+
+	/**
+	 * the branch span,from the enlist to the end of phase two.
+	 */
+	public Span getSpan() {
+		return span;
+	}
+
+	public void setSpan(Span span) {
+		this.span = span;
+	}
+
+	void setGroup(DubboXAResourceGroup group) {
+		this.group = group;
+	}
 }
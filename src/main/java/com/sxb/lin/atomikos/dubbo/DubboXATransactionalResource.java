@@ -1,12 +1,16 @@
 package com.sxb.lin.atomikos.dubbo;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,11 +29,22 @@ import com.atomikos.recovery.RecoveryLog;
 import com.atomikos.recovery.TxState;
 import com.atomikos.recovery.imp.RecoveryLogImp;
 import com.atomikos.recovery.xa.XaResourceRecoveryManager;
+import com.sxb.lin.atomikos.dubbo.jfr.XAEventType;
+import com.sxb.lin.atomikos.dubbo.jfr.XAFlightEvent;
+import com.sxb.lin.atomikos.dubbo.jfr.XAFlightRecorder;
+import com.sxb.lin.atomikos.dubbo.recovery.IndexedRepository;
+import com.sxb.lin.atomikos.dubbo.recovery.RecoveryTracker;
+import com.sxb.lin.atomikos.dubbo.recovery.RecoveryWorkers;
 import com.sxb.lin.atomikos.dubbo.rocketmq.MQProducerFor2PC;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
 
 public class DubboXATransactionalResource extends XATransactionalResource{
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(DubboXATransactionalResource.class);
+	
+	private final static long UNFINISHED_LOG_INTERVAL = 60000;
+	
+	private final LogRateLimiter unfinishedLogLimiter = new LogRateLimiter(UNFINISHED_LOG_INTERVAL);
 
 	private Map<String,Long> uniqueResourceNameMap;
 	
@@ -37,11 +52,18 @@ public class DubboXATransactionalResource extends XATransactionalResource{
 	
 	private Set<String> excludeResourceNames;
 	
+	private RecoveryWorkers recoveryWorkers;
+	
 	public DubboXATransactionalResource(Set<String> excludeResourceNames) {
+		this(excludeResourceNames, new RecoveryWorkers(RecoveryWorkers.DEFAULT_THREADS, RecoveryWorkers.DEFAULT_TIMEOUT_MILLIS));
+	}
+	
+	public DubboXATransactionalResource(Set<String> excludeResourceNames, RecoveryWorkers recoveryWorkers) {
 		super("dubboXATransactionalResource");
 		this.uniqueResourceNameMap = new ConcurrentHashMap<String, Long>();
 		this.recoverMap = new ConcurrentHashMap<String, Long>();
 		this.excludeResourceNames = excludeResourceNames;
+		this.recoveryWorkers = recoveryWorkers;
 	}
 
 	@Override
@@ -50,7 +72,7 @@ public class DubboXATransactionalResource extends XATransactionalResource{
 	}
 	
 	protected XAResource createDubboXAResource(String resourceName) {
-		LOGGER.info( this.getName() + ": created " + resourceName + " XAResource" );
+		LOGGER.debug("{}: created {} XAResource", this.getName(), resourceName);
 		return new DubboXAResourceImpl(resourceName);
 	}
 
@@ -79,15 +101,22 @@ public class DubboXATransactionalResource extends XATransactionalResource{
 			if(excludeResourceNames != null && excludeResourceNames.size() > 0){
 				resourceNames.removeAll(excludeResourceNames);
 			}
-			XaResourceRecoveryManager xaResourceRecoveryManager = XaResourceRecoveryManager.getInstance();
+			final XaResourceRecoveryManager xaResourceRecoveryManager = XaResourceRecoveryManager.getInstance();
 			if (xaResourceRecoveryManager != null) {
-				for(String resourceName : resourceNames){
-					try {
-						xaResourceRecoveryManager.recover(this.createDubboXAResource(resourceName));
-					} catch (Exception e) {
-						LOGGER.error(e.getMessage(), e);
+				recoveryWorkers.recover(resourceNames, new RecoveryWorkers.Recoverer() {
+					public void recover(String resourceName) throws Exception {
+						XAFlightEvent event = XAFlightRecorder.begin(XAEventType.RECOVER);
+						boolean success = false;
+						try {
+							xaResourceRecoveryManager.recover(createDubboXAResource(resourceName));
+							success = true;
+						} finally {
+							if(event != null){
+								event.commit(null, resourceName, null, success ? "ok" : "fail");
+							}
+						}
 					}
-				}
+				});
 			}
 		} catch (LogException couldNotRetrieveCommittingXids) {
 			LOGGER.warn("Transient error while recovering - will retry later...", couldNotRetrieveCommittingXids);
@@ -95,34 +124,92 @@ public class DubboXATransactionalResource extends XATransactionalResource{
 		
 	}
 	
+	/**
+	 * unfinished participants are summarized at most once a minute,
+	 * every expired entry is logged at debug level.
+	 */
 	private Set<String> getExpiredResourceNames() throws LogReadException {
 		Set<String> ret = new HashSet<String>();
-		Collection<ParticipantLogEntry> entries = this.getUnfinishedParticipants();
+		IndexedRepository indexedRepository = DubboTransactionManagerServiceProxy.getInstance().getIndexedRepository();
+		Collection<ParticipantLogEntry> entries = null;
+		int unfinished = 0;
+		if(indexedRepository != null){
+			RecoveryTracker recoveryTracker = indexedRepository.getRecoveryTracker();
+			recoveryTracker.poll(System.currentTimeMillis());
+			entries = this.getParticipants(recoveryTracker.getExpiredCoordinatorLogEntries());
+			unfinished = recoveryTracker.getUnfinishedParticipants();
+		}else{
+			entries = this.getParticipants(this.scanUnfinishedCoordinatorLogEntries());
+			unfinished = entries.size();
+		}
+		int expired = 0;
 		for (ParticipantLogEntry entry : entries) {
-			LOGGER.warn("xa command interrupted " + entry.toString());
+			LOGGER.debug("xa command interrupted {}", entry);
 			if (expired(entry) && !http(entry)) {
+				expired++;
 				if((!entry.resourceName.equals(entry.coordinatorId + entry.uri)) 
 						&& (!entry.resourceName.startsWith(MQProducerFor2PC.MQ_UNIQUE_TOPIC_PREFIX))){
 					ret.add(entry.resourceName);
 				}
 			}
 		}
+		if(unfinished > 0 && unfinishedLogLimiter.acquire()){
+			LOGGER.warn("xa command interrupted,{} unfinished participants,{} expired,recover resources {},{} passes not logged.", 
+					unfinished, expired, ret, unfinishedLogLimiter.drainSuppressed());
+		}
 		return ret;
 	}
 	
-	private Collection<ParticipantLogEntry> getUnfinishedParticipants(){
+	private Collection<ParticipantLogEntry> getParticipants(List<CoordinatorLogEntry> coordinatorLogEntries){
+		Collection<ParticipantLogEntry> allParticipants = new HashSet<ParticipantLogEntry>();
+		for (CoordinatorLogEntry coordinatorLogEntry : coordinatorLogEntries) {
+			for (ParticipantLogEntry participantLogEntry : coordinatorLogEntry.participants) {
+				allParticipants.add(participantLogEntry);
+			}
+		}
+		return allParticipants;
+	}
+	
+	/**
+	 * kept by the recovery tracker,scanned from the recovery log when the
+	 * coordinator log entries are not indexed.
+	 */
+	public List<CoordinatorLogEntry> getUnfinishedCoordinatorLogEntries(){
+		IndexedRepository indexedRepository = DubboTransactionManagerServiceProxy.getInstance().getIndexedRepository();
+		if(indexedRepository != null){
+			return indexedRepository.getRecoveryTracker().getUnfinishedCoordinatorLogEntries();
+		}
+		return this.scanUnfinishedCoordinatorLogEntries();
+	}
+	
+	private List<CoordinatorLogEntry> scanUnfinishedCoordinatorLogEntries(){
+		List<CoordinatorLogEntry> entries = new ArrayList<CoordinatorLogEntry>();
 		RecoveryLog log = Configuration.getRecoveryLog();
+		if(log == null){
+			return entries;
+		}
 		RecoveryLogImp impl = (RecoveryLogImp) log;
 		CoordinatorLogEntry[] coordinatorLogEntries = impl.getCoordinatorLogEntries();
-		Collection<ParticipantLogEntry> allParticipants = new HashSet<ParticipantLogEntry>();
 		for (CoordinatorLogEntry coordinatorLogEntry : coordinatorLogEntries) {
 			if(coordinatorLogEntry.getResultingState() != TxState.TERMINATED){
-				for (ParticipantLogEntry participantLogEntry : coordinatorLogEntry.participants) {
-					allParticipants.add(participantLogEntry);
-				}
+				entries.add(coordinatorLogEntry);
 			}
 		}
-		return allParticipants;
+		return entries;
+	}
+	
+	/**
+	 * resources enlisted since the last recovery pass,with their timeout.
+	 */
+	public Map<String, Long> getUniqueResourceNameMap() {
+		return Collections.unmodifiableMap(uniqueResourceNameMap);
+	}
+	
+	/**
+	 * resources recovered by every pass until their timeout.
+	 */
+	public Map<String, Long> getRecoverMap() {
+		return Collections.unmodifiableMap(recoverMap);
 	}
 
 	private boolean http(ParticipantLogEntry entry) {
@@ -135,25 +222,31 @@ public class DubboXATransactionalResource extends XATransactionalResource{
 	}
 	
 	private TransactionalResource createTransactionalResource(String uniqueResourceName,long timeout){
-		recoverMap.remove(uniqueResourceName);
-		uniqueResourceNameMap.put(uniqueResourceName, timeout);
-		TransactionalResource transactionalResource = new TemporaryXATransactionalResource(uniqueResourceName);
-		TransactionServiceProvider transactionService = (TransactionServiceProvider) Configuration.getTransactionService();
-		transactionalResource.setRecoveryService(transactionService.getRecoveryService());
-		return transactionalResource;
+		return this.createTransactionalResource(uniqueResourceName, timeout, null);
 	}
 	
-	public TransactionalResource findOrCreateTransactionalResource(String uniqueResourceName,long timeout) {
+	public TransactionalResource createTransactionalResource(String uniqueResourceName,long timeout,Xid xid){
+		TransactionalResource transactionalResource = null;
 		if(uniqueResourceName.startsWith(MQProducerFor2PC.MQ_UNIQUE_TOPIC_PREFIX)){
-			TransactionalResource transactionalResource = new TemporaryXATransactionalResource(uniqueResourceName){
+			transactionalResource = new TemporaryXATransactionalResource(uniqueResourceName,xid){
 				@Override
 				public void recover() {
 					//no recover
 				}
 			};
-			TransactionServiceProvider transactionService = (TransactionServiceProvider) Configuration.getTransactionService();
-			transactionalResource.setRecoveryService(transactionService.getRecoveryService());
-			return transactionalResource;
+		}else{
+			recoverMap.remove(uniqueResourceName);
+			uniqueResourceNameMap.put(uniqueResourceName, timeout);
+			transactionalResource = new TemporaryXATransactionalResource(uniqueResourceName,xid);
+		}
+		TransactionServiceProvider transactionService = (TransactionServiceProvider) Configuration.getTransactionService();
+		transactionalResource.setRecoveryService(transactionService.getRecoveryService());
+		return transactionalResource;
+	}
+	
+	public TransactionalResource findOrCreateTransactionalResource(String uniqueResourceName,long timeout) {
+		if(uniqueResourceName.startsWith(MQProducerFor2PC.MQ_UNIQUE_TOPIC_PREFIX)){
+			return this.createTransactionalResource(uniqueResourceName, timeout, null);
 		}
 		
 		RecoverableResource resource = Configuration.getResource(uniqueResourceName);
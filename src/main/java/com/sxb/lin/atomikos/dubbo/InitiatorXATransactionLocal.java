@@ -1,5 +1,9 @@
 package com.sxb.lin.atomikos.dubbo;
 
+import com.sxb.lin.atomikos.dubbo.trace.Span;
+import com.sxb.lin.atomikos.dubbo.trace.TraceContext;
+import com.sxb.lin.atomikos.dubbo.trace.XATracer;
+
 public class InitiatorXATransactionLocal {
 
 	private final static ThreadLocal<InitiatorXATransactionLocal> CURRENT_LOCAL = new ThreadLocal<InitiatorXATransactionLocal>();
@@ -17,6 +21,10 @@ public class InitiatorXATransactionLocal {
     private String timeOut;
     
     private boolean isActive;
+    
+    private Span span;
+    
+    private TraceContext oldTraceContext;
 
 	public String getTmAddress() {
 		return tmAddress;
@@ -42,13 +50,31 @@ public class InitiatorXATransactionLocal {
 		this.timeOut = timeOut;
 	}
 	
+	/**
+	 * the root span of the xa transaction,from begin to the cleanup after completion.
+	 */
+	public Span getSpan() {
+		return span;
+	}
+
+	public void setSpan(Span span) {
+		this.span = span;
+	}
+	
 	public void bindToThread(){
 		oldXATransactionLocal = CURRENT_LOCAL.get();
 		CURRENT_LOCAL.set(this);
+		if(span != null){
+			oldTraceContext = XATracer.bind(span.getContext());
+		}
     }
 	
 	public void restoreThreadLocalStatus(){
 		CURRENT_LOCAL.set(oldXATransactionLocal);
+		if(span != null){
+			XATracer.restore(oldTraceContext);
+			span.finish("completed");
+		}
 	}
 
 	public boolean isActive() {
@@ -0,0 +1,40 @@
+package com.sxb.lin.atomikos.dubbo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets one log line through per interval,the events in between are only counted
+ * and reported with the next line.
+ */
+public class LogRateLimiter {
+	
+	private final long intervalMillis;
+	
+	private final AtomicLong next = new AtomicLong();
+	
+	private final AtomicLong suppressed = new AtomicLong();
+	
+	public LogRateLimiter(long intervalMillis) {
+		this.intervalMillis = intervalMillis;
+	}
+	
+	/**
+	 * true when a line may be logged now,otherwise the event is counted as suppressed.
+	 */
+	public boolean acquire(){
+		long now = System.currentTimeMillis();
+		long current = next.get();
+		if(now >= current && next.compareAndSet(current, now + intervalMillis)){
+			return true;
+		}
+		suppressed.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * the events suppressed since the last call.
+	 */
+	public long drainSuppressed(){
+		return suppressed.getAndSet(0);
+	}
+}
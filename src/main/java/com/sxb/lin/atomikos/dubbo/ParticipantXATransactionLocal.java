@@ -1,6 +1,22 @@
 package com.sxb.lin.atomikos.dubbo;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sxb.lin.atomikos.dubbo.pool.XAResourceHolder;
+import com.sxb.lin.atomikos.dubbo.pool.XAResourcePool;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
+import com.sxb.lin.atomikos.dubbo.service.StartXid;
+
 public class ParticipantXATransactionLocal {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParticipantXATransactionLocal.class);
 
 	private final static ThreadLocal<ParticipantXATransactionLocal> CURRENT_LOCAL = new ThreadLocal<ParticipantXATransactionLocal>();
 	
@@ -26,6 +42,8 @@ public class ParticipantXATransactionLocal {
     private String tmAddress;
     
     private String timeOut;
+    
+    private Map<XAResourceHolder, Future<StartXid>> enlistFutures;
 
 	public String getTid() {
 		return tid;
@@ -76,4 +94,40 @@ public class ParticipantXATransactionLocal {
 		}
 		return isActive;
 	}
+	
+	public void addEnlistFuture(XAResourceHolder xaResourceHolder, Future<StartXid> future){
+		if(enlistFutures == null){
+			enlistFutures = new LinkedHashMap<XAResourceHolder, Future<StartXid>>();
+		}
+		enlistFutures.put(xaResourceHolder, future);
+	}
+	
+	/**
+	 * wait for the async enlist of every branch started in this call,
+	 * branches the tm did not accept are rolled back and closed.
+	 */
+	public Throwable awaitEnlistFutures(){
+		if(enlistFutures == null){
+			return null;
+		}
+		Throwable error = null;
+		XAResourcePool xaResourcePool = DubboTransactionManagerServiceProxy.getInstance().getXaResourcePool();
+		for(Entry<XAResourceHolder, Future<StartXid>> entry : enlistFutures.entrySet()){
+			XAResourceHolder xaResourceHolder = entry.getKey();
+			try {
+				long timeout = Math.max(Long.parseLong(this.timeOut) - System.currentTimeMillis(), 0);
+				if(entry.getValue().get(timeout, TimeUnit.MILLISECONDS) != null){
+					continue;
+				}
+				error = new AtomikosDubboException("enlist resource " + xaResourceHolder.getUuid() + " return null.");
+			} catch (Exception e) {
+				LOGGER.error(e.getMessage(), e);
+				error = e;
+			}
+			xaResourcePool.removeXAResourceHolder(xaResourceHolder);
+			xaResourceHolder.close();
+		}
+		enlistFutures = null;
+		return error;
+	}
 }
@@ -1,22 +1,39 @@
 package com.sxb.lin.atomikos.dubbo;
 
 import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
 
 import com.atomikos.datasource.ResourceException;
 import com.atomikos.datasource.xa.XATransactionalResource;
+import com.atomikos.datasource.xa.XID;
 
 public class TemporaryXATransactionalResource extends XATransactionalResource{
 	
 	private String uniqueResourceName;
+	
+	private Xid xid;
 
 	TemporaryXATransactionalResource(String uniqueResourceName) {
+		this(uniqueResourceName, null);
+	}
+	
+	TemporaryXATransactionalResource(String uniqueResourceName, Xid xid) {
 		super(uniqueResourceName);
 		this.uniqueResourceName = uniqueResourceName;
+		this.xid = xid;
 	}
 
 	@Override
 	protected XAResource refreshXAConnection() throws ResourceException {
 		return new DubboXAResourceImpl(uniqueResourceName);
 	}
+	
+	@Override
+	protected XID createXid(String tid) {
+		if(xid == null){
+			return super.createXid(tid);
+		}
+		return new XID(xid);
+	}
 
 }
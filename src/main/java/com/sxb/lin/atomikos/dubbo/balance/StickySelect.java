@@ -29,7 +29,7 @@ class StickySelect {
 				return doSelect;
 				
 			} else {
-				if(invocation.getArguments().length > 1){
+				if(invocation.getArguments().length > 1 && invocation.getArguments()[1] instanceof String){
 					
 					String uniqueResourceName = (String) invocation.getArguments()[1];
 					String uniqueResourceNames = invoker.getUrl().getParameter("uniqueResourceNames");
@@ -0,0 +1,68 @@
+package com.sxb.lin.atomikos.dubbo.diagnostics;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class CoordinatorInfo implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	private String tid;
+	
+	private String state;
+	
+	private boolean wasCommitted;
+	
+	private long expires;
+	
+	/**
+	 * resourceName,uri and state of every participant.
+	 */
+	private List<String> participants;
+
+	public String getTid() {
+		return tid;
+	}
+
+	public void setTid(String tid) {
+		this.tid = tid;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public void setState(String state) {
+		this.state = state;
+	}
+
+	public boolean isWasCommitted() {
+		return wasCommitted;
+	}
+
+	public void setWasCommitted(boolean wasCommitted) {
+		this.wasCommitted = wasCommitted;
+	}
+
+	public long getExpires() {
+		return expires;
+	}
+
+	public void setExpires(long expires) {
+		this.expires = expires;
+	}
+
+	public List<String> getParticipants() {
+		return participants;
+	}
+
+	public void setParticipants(List<String> participants) {
+		this.participants = participants;
+	}
+
+	@Override
+	public String toString() {
+		return "CoordinatorInfo [tid=" + tid + ", state=" + state + ", wasCommitted=" + wasCommitted + ", expires="
+				+ expires + ", participants=" + participants + "]";
+	}
+}
@@ -0,0 +1,75 @@
+package com.sxb.lin.atomikos.dubbo.diagnostics;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DiagnosticsPage<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	private int offset;
+	
+	private int limit;
+	
+	private int total;
+	
+	private List<T> items;
+	
+	/**
+	 * the page of a sorted snapshot,offset below zero is read as zero.
+	 */
+	public static <T> DiagnosticsPage<T> of(List<T> all, int offset, int limit){
+		offset = Math.max(offset, 0);
+		limit = Math.max(Math.min(limit, DubboXADiagnosticsService.MAX_LIMIT), 0);
+		int from = Math.min(offset, all.size());
+		int to = Math.min(from + limit, all.size());
+		DiagnosticsPage<T> page = new DiagnosticsPage<T>();
+		page.setOffset(offset);
+		page.setLimit(limit);
+		page.setTotal(all.size());
+		page.setItems(new ArrayList<T>(all.subList(from, to)));
+		return page;
+	}
+	
+	public boolean hasMore(){
+		return items != null && offset + items.size() < total;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public void setOffset(int offset) {
+		this.offset = offset;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public void setTotal(int total) {
+		this.total = total;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public void setItems(List<T> items) {
+		this.items = items;
+	}
+
+	@Override
+	public String toString() {
+		return "DiagnosticsPage [offset=" + offset + ", limit=" + limit + ", total=" + total + ", items=" + items + "]";
+	}
+}
@@ -0,0 +1,25 @@
+package com.sxb.lin.atomikos.dubbo.diagnostics;
+
+/**
+ * read-only view of the in-flight xa state of one node,exported alongside DubboTransactionManagerService.
+ * every list is paged,limit is capped at MAX_LIMIT.
+ */
+public interface DubboXADiagnosticsService {
+	
+	final static int MAX_LIMIT = 1000;
+
+	/**
+	 * branches in the XAResourcePool of this node,oldest first.
+	 */
+	DiagnosticsPage<XAResourceHolderInfo> getXAResourceHolders(int offset, int limit);
+	
+	/**
+	 * resource names waiting for recovery by DubboXATransactionalResource,earliest timeout first.
+	 */
+	DiagnosticsPage<RecoverResourceInfo> getRecoverResources(int offset, int limit);
+	
+	/**
+	 * coordinator log entries of this node that are not terminated,oldest expiry first.
+	 */
+	DiagnosticsPage<CoordinatorInfo> getUnfinishedCoordinators(int offset, int limit);
+}
@@ -0,0 +1,112 @@
+package com.sxb.lin.atomikos.dubbo.diagnostics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.atomikos.recovery.CoordinatorLogEntry;
+import com.atomikos.recovery.ParticipantLogEntry;
+import com.sxb.lin.atomikos.dubbo.DubboXATransactionalResource;
+import com.sxb.lin.atomikos.dubbo.pool.XAResourceHolder;
+import com.sxb.lin.atomikos.dubbo.pool.XAResourcePool;
+import com.sxb.lin.atomikos.dubbo.service.StartXid;
+
+public class DubboXADiagnosticsServiceImpl implements DubboXADiagnosticsService {
+	
+	private XAResourcePool xaResourcePool;
+	
+	private DubboXATransactionalResource dubboXATransactionalResource;
+
+	public DubboXADiagnosticsServiceImpl(XAResourcePool xaResourcePool, 
+			DubboXATransactionalResource dubboXATransactionalResource) {
+		this.xaResourcePool = xaResourcePool;
+		this.dubboXATransactionalResource = dubboXATransactionalResource;
+	}
+
+	public DiagnosticsPage<XAResourceHolderInfo> getXAResourceHolders(int offset, int limit) {
+		long now = System.currentTimeMillis();
+		List<XAResourceHolderInfo> infos = new ArrayList<XAResourceHolderInfo>();
+		for(XAResourceHolder holder : xaResourcePool.getXAResourceHolders()){
+			StartXid startXid = holder.getStartXid();
+			if(startXid == null){
+				//closed while listing
+				continue;
+			}
+			XAResourceHolderInfo info = new XAResourceHolderInfo();
+			info.setUuid(holder.getUuid());
+			info.setTid(new String(startXid.getXid().getGlobalTransactionId()));
+			info.setXid(startXid.getXid().toString());
+			info.setUniqueResourceName(holder.getDubboUniqueResourceName());
+			info.setTmAddress(holder.getTmAddress());
+			info.setStatus(holder.getStrCurrentStatus());
+			info.setStartTime(startXid.getStartTime());
+			info.setAge(now - startXid.getStartTime());
+			info.setRemaining(startXid.getStartTime() + startXid.getTimeout() - now);
+			infos.add(info);
+		}
+		Collections.sort(infos, new Comparator<XAResourceHolderInfo>() {
+			public int compare(XAResourceHolderInfo o1, XAResourceHolderInfo o2) {
+				return compareLong(o1.getStartTime(), o2.getStartTime());
+			}
+		});
+		return DiagnosticsPage.of(infos, offset, limit);
+	}
+
+	public DiagnosticsPage<RecoverResourceInfo> getRecoverResources(int offset, int limit) {
+		long now = System.currentTimeMillis();
+		List<RecoverResourceInfo> infos = new ArrayList<RecoverResourceInfo>();
+		this.addRecoverResources(infos, dubboXATransactionalResource.getUniqueResourceNameMap(), 
+				RecoverResourceInfo.ENLISTED, now);
+		this.addRecoverResources(infos, dubboXATransactionalResource.getRecoverMap(), 
+				RecoverResourceInfo.RECOVERING, now);
+		Collections.sort(infos, new Comparator<RecoverResourceInfo>() {
+			public int compare(RecoverResourceInfo o1, RecoverResourceInfo o2) {
+				return compareLong(o1.getTimeout(), o2.getTimeout());
+			}
+		});
+		return DiagnosticsPage.of(infos, offset, limit);
+	}
+	
+	private void addRecoverResources(List<RecoverResourceInfo> infos, Map<String, Long> map, String state, long now){
+		for(Entry<String, Long> entry : map.entrySet()){
+			RecoverResourceInfo info = new RecoverResourceInfo();
+			info.setUniqueResourceName(entry.getKey());
+			info.setState(state);
+			info.setTimeout(entry.getValue());
+			info.setRemaining(entry.getValue() - now);
+			infos.add(info);
+		}
+	}
+
+	public DiagnosticsPage<CoordinatorInfo> getUnfinishedCoordinators(int offset, int limit) {
+		List<CoordinatorInfo> infos = new ArrayList<CoordinatorInfo>();
+		for(CoordinatorLogEntry entry : dubboXATransactionalResource.getUnfinishedCoordinatorLogEntries()){
+			CoordinatorInfo info = new CoordinatorInfo();
+			info.setTid(entry.id);
+			info.setState(String.valueOf(entry.getResultingState()));
+			info.setWasCommitted(entry.wasCommitted);
+			long expires = Long.MAX_VALUE;
+			List<String> participants = new ArrayList<String>(entry.participants.length);
+			for(ParticipantLogEntry participant : entry.participants){
+				expires = Math.min(expires, participant.expires);
+				participants.add(participant.resourceName + "," + participant.uri + "," + participant.state);
+			}
+			info.setExpires(expires);
+			info.setParticipants(participants);
+			infos.add(info);
+		}
+		Collections.sort(infos, new Comparator<CoordinatorInfo>() {
+			public int compare(CoordinatorInfo o1, CoordinatorInfo o2) {
+				return compareLong(o1.getExpires(), o2.getExpires());
+			}
+		});
+		return DiagnosticsPage.of(infos, offset, limit);
+	}
+	
+	private static int compareLong(long x, long y){
+		return x < y ? -1 : (x == y ? 0 : 1);
+	}
+}
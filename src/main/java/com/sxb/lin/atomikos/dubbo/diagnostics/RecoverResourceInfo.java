@@ -0,0 +1,64 @@
+package com.sxb.lin.atomikos.dubbo.diagnostics;
+
+import java.io.Serializable;
+
+public class RecoverResourceInfo implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * enlisted since the last recovery pass.
+	 */
+	public final static String ENLISTED = "enlisted";
+	
+	/**
+	 * recovered by every pass until the timeout.
+	 */
+	public final static String RECOVERING = "recovering";
+	
+	private String uniqueResourceName;
+	
+	private String state;
+	
+	private long timeout;
+	
+	private long remaining;
+
+	public String getUniqueResourceName() {
+		return uniqueResourceName;
+	}
+
+	public void setUniqueResourceName(String uniqueResourceName) {
+		this.uniqueResourceName = uniqueResourceName;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public void setState(String state) {
+		this.state = state;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public long getRemaining() {
+		return remaining;
+	}
+
+	public void setRemaining(long remaining) {
+		this.remaining = remaining;
+	}
+
+	@Override
+	public String toString() {
+		return "RecoverResourceInfo [uniqueResourceName=" + uniqueResourceName + ", state=" + state + ", remaining="
+				+ remaining + "]";
+	}
+}
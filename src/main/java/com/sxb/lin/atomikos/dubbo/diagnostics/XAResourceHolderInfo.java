@@ -0,0 +1,111 @@
+package com.sxb.lin.atomikos.dubbo.diagnostics;
+
+import java.io.Serializable;
+
+public class XAResourceHolderInfo implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	private String uuid;
+	
+	private String tid;
+	
+	private String xid;
+	
+	private String uniqueResourceName;
+	
+	private String tmAddress;
+	
+	private String status;
+	
+	private long startTime;
+	
+	private long age;
+	
+	private long remaining;
+
+	public String getUuid() {
+		return uuid;
+	}
+
+	public void setUuid(String uuid) {
+		this.uuid = uuid;
+	}
+
+	public String getTid() {
+		return tid;
+	}
+
+	public void setTid(String tid) {
+		this.tid = tid;
+	}
+
+	public String getXid() {
+		return xid;
+	}
+
+	public void setXid(String xid) {
+		this.xid = xid;
+	}
+
+	public String getUniqueResourceName() {
+		return uniqueResourceName;
+	}
+
+	public void setUniqueResourceName(String uniqueResourceName) {
+		this.uniqueResourceName = uniqueResourceName;
+	}
+
+	public String getTmAddress() {
+		return tmAddress;
+	}
+
+	public void setTmAddress(String tmAddress) {
+		this.tmAddress = tmAddress;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	/**
+	 * milliseconds since the branch started.
+	 */
+	public long getAge() {
+		return age;
+	}
+
+	public void setAge(long age) {
+		this.age = age;
+	}
+
+	/**
+	 * milliseconds until the branch expires,negative once it is overdue.
+	 */
+	public long getRemaining() {
+		return remaining;
+	}
+
+	public void setRemaining(long remaining) {
+		this.remaining = remaining;
+	}
+
+	@Override
+	public String toString() {
+		return "XAResourceHolderInfo [uuid=" + uuid + ", tid=" + tid + ", xid=" + xid + ", uniqueResourceName="
+				+ uniqueResourceName + ", tmAddress=" + tmAddress + ", status=" + status + ", age=" + age
+				+ ", remaining=" + remaining + "]";
+	}
+}
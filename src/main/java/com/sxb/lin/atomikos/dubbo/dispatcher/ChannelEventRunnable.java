@@ -34,21 +34,23 @@ public class ChannelEventRunnable extends com.alibaba.dubbo.remoting.transport.d
 				return;
 			}
 			String tmAddress = channel.getRemoteAddress().toString().replace("/", "");
-			LOGGER.warn("disconected from " + tmAddress + ",need to check the pool's connection.");
 			XAResourcePool xaResourcePool = instance.getXaResourcePool();
 			List<XAResourceHolder> list = xaResourcePool.getDisconnectedHolderByTmAddress(tmAddress);
 			if(list.size() == 0){
+				LOGGER.debug("disconected from {},no XAResourceHolder from it.", tmAddress);
 				return;
 			}
+			LOGGER.warn("disconected from {},need to check {} XAResourceHolder in the pool.", tmAddress, list.size());
 			long ping = instance.ping(tmAddress);
 			if(ping < 0){
+				LOGGER.error("disconected from {},so close {} XAResourceHolder from it.", tmAddress, list.size());
 				for(XAResourceHolder xaResourceHolder : list){
-					LOGGER.error("disconected from " + tmAddress + ",so close " + xaResourceHolder.getUuid() + ",it from "+tmAddress);
+					LOGGER.debug("disconected from {},so close {}", tmAddress, xaResourceHolder.getUuid());
 					xaResourcePool.removeXAResourceHolder(xaResourceHolder);
 					xaResourceHolder.close();
 				}
 			} else {
-				LOGGER.info("disconected from " + tmAddress + ",ping " + tmAddress + " is ok,return " + ping);
+				LOGGER.info("disconected from {},ping {} is ok,return {}", tmAddress, tmAddress, ping);
 			}
 		}
 	}
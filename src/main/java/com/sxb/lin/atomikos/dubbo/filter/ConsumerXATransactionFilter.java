@@ -9,6 +9,8 @@ import com.alibaba.dubbo.rpc.RpcException;
 import com.sxb.lin.atomikos.dubbo.InitiatorXATransactionLocal;
 import com.sxb.lin.atomikos.dubbo.ParticipantXATransactionLocal;
 import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerService;
+import com.sxb.lin.atomikos.dubbo.trace.Span;
+import com.sxb.lin.atomikos.dubbo.trace.XATracer;
 
 public class ConsumerXATransactionFilter implements Filter {
 	
@@ -27,7 +29,7 @@ public class ConsumerXATransactionFilter implements Filter {
 				context.setAttachment(XA_TM_ADDRESS_KEY,icurrent.getTmAddress());
 				context.setAttachment(XA_TID_KEY, icurrent.getTid());
 				context.setAttachment(XA_TIME_OUT, icurrent.getTimeOut());
-				return invoker.invoke(invocation);
+				return this.invoke(invoker, invocation, icurrent.getTid());
 			}
 			
 			ParticipantXATransactionLocal pcurrent = ParticipantXATransactionLocal.current();
@@ -36,11 +38,31 @@ public class ConsumerXATransactionFilter implements Filter {
 				context.setAttachment(XA_TM_ADDRESS_KEY,pcurrent.getTmAddress());
 				context.setAttachment(XA_TID_KEY, pcurrent.getTid());
 				context.setAttachment(XA_TIME_OUT, pcurrent.getTimeOut());
-				return invoker.invoke(invocation);
+				return this.invoke(invoker, invocation, pcurrent.getTid());
 			}
 		}
 		
 		return invoker.invoke(invocation);
 	}
-
+	
+	/**
+	 * the business call is a span of the xa transaction,its context goes with the call.
+	 */
+	private Result invoke(Invoker<?> invoker, Invocation invocation, String tid) throws RpcException {
+		String remoteAddress = invoker.getUrl().getAddress();
+		Span span = XATracer.startSpan("call " + invoker.getInterface().getName() + "." + invocation.getMethodName(), 
+				XATracer.current(), tid, null, remoteAddress);
+		if(span == null){
+			return invoker.invoke(invocation);
+		}
+		RpcContext.getContext().setAttachment(XATracer.XA_TRACE_KEY, span.getContext().encode());
+		boolean success = false;
+		try {
+			Result result = invoker.invoke(invocation);
+			success = !result.hasException();
+			return result;
+		} finally {
+			span.finish(success);
+		}
+	}
 }
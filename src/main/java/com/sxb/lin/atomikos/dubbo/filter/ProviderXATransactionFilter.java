@@ -8,8 +8,13 @@ import com.alibaba.dubbo.rpc.Invoker;
 import com.alibaba.dubbo.rpc.Result;
 import com.alibaba.dubbo.rpc.RpcContext;
 import com.alibaba.dubbo.rpc.RpcException;
+import com.alibaba.dubbo.rpc.RpcResult;
+import com.sxb.lin.atomikos.dubbo.AtomikosDubboException;
 import com.sxb.lin.atomikos.dubbo.ParticipantXATransactionLocal;
 import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerService;
+import com.sxb.lin.atomikos.dubbo.trace.Span;
+import com.sxb.lin.atomikos.dubbo.trace.TraceContext;
+import com.sxb.lin.atomikos.dubbo.trace.XATracer;
 
 public class ProviderXATransactionFilter implements Filter {
 
@@ -24,6 +29,8 @@ public class ProviderXATransactionFilter implements Filter {
 		String tid = context.getAttachment(ConsumerXATransactionFilter.XA_TID_KEY);
 		String timeOut = context.getAttachment(ConsumerXATransactionFilter.XA_TIME_OUT);
 		ParticipantXATransactionLocal local = null;
+		Span span = null;
+		TraceContext oldTraceContext = null;
 		
 		if(StringUtils.hasLength(tmAddress) && StringUtils.hasLength(tid) && StringUtils.hasLength(timeOut)){
 			local = new ParticipantXATransactionLocal();
@@ -31,15 +38,30 @@ public class ProviderXATransactionFilter implements Filter {
 			local.setTid(tid);
 			local.setTimeOut(timeOut);
 			local.bindToThread();
+			span = XATracer.startSpan("serve " + invoker.getInterface().getName() + "." + invocation.getMethodName(), 
+					TraceContext.decode(context.getAttachment(XATracer.XA_TRACE_KEY)), tid, null, context.getRemoteAddressString());
+			if(span != null){
+				oldTraceContext = XATracer.bind(span.getContext());
+			}
 		}
 		
-		Result result = invoker.invoke(invocation);
-		
-		if(local != null){
-			local.restoreThreadLocalStatus();
+		Result result = null;
+		try {
+			result = invoker.invoke(invocation);
+			if(local != null){
+				local.restoreThreadLocalStatus();
+				Throwable error = local.awaitEnlistFutures();
+				if(error != null && !result.hasException()){
+					result = new RpcResult(new AtomikosDubboException("enlist resource fail.", error));
+				}
+			}
+			return result;
+		} finally {
+			if(span != null){
+				XATracer.restore(oldTraceContext);
+				span.finish(result != null && !result.hasException());
+			}
 		}
-		
-		return result;
 	}
 
 }
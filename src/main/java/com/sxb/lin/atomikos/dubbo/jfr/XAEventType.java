@@ -0,0 +1,46 @@
+package com.sxb.lin.atomikos.dubbo.jfr;
+
+/**
+ * the flight recorder events of a branch,named com.sxb.lin.atomikos.dubbo.Xxx in a recording.
+ */
+public enum XAEventType {
+	
+	ENLIST("Enlist", "XA Enlist RPC"),
+	
+	START("Start", "XA Start"),
+	
+	END("End", "XA End"),
+	
+	PREPARE("Prepare", "XA Prepare"),
+	
+	COMMIT("Commit", "XA Commit"),
+	
+	ROLLBACK("Rollback", "XA Rollback"),
+	
+	PREPARE_RPC("PrepareRpc", "XA Prepare RPC"),
+	
+	COMMIT_RPC("CommitRpc", "XA Commit RPC"),
+	
+	ROLLBACK_RPC("RollbackRpc", "XA Rollback RPC"),
+	
+	RECOVER("Recover", "XA Recovery Pass"),
+	
+	EXPIRE("Expire", "XA Pool Expiry");
+	
+	private final String name;
+	
+	private final String label;
+
+	private XAEventType(String name, String label) {
+		this.name = name;
+		this.label = label;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+}
@@ -0,0 +1,24 @@
+package com.sxb.lin.atomikos.dubbo.jfr;
+
+import javax.transaction.xa.Xid;
+
+/**
+ * a begun flight recorder event,commit it once with the branch it was about.
+ */
+public class XAFlightEvent {
+	
+	private final Object event;
+
+	XAFlightEvent(Object event) {
+		this.event = event;
+	}
+	
+	public void commit(Xid xid, String uniqueResourceName, String remoteAddress, String result){
+		String tid = xid == null ? null : new String(xid.getGlobalTransactionId());
+		this.commit(tid, xid, uniqueResourceName, remoteAddress, result);
+	}
+	
+	public void commit(String tid, Xid xid, String uniqueResourceName, String remoteAddress, String result){
+		XAFlightRecorder.commit(event, tid, xid == null ? null : xid.toString(), uniqueResourceName, remoteAddress, result);
+	}
+}
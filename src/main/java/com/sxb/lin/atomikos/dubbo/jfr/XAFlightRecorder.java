@@ -0,0 +1,144 @@
+package com.sxb.lin.atomikos.dubbo.jfr;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Flight recorder events for the XA branches. The project still runs on jvms without jdk.jfr,
+ * so the event types are created by jdk.jfr.EventFactory through reflection and everything is
+ * a no-op when it is missing. An event is only created while a recording has it enabled.
+ * set -Dtransactions.dubbo.jfr=false to turn it off.
+ */
+public abstract class XAFlightRecorder {
+	
+	private final static Logger LOGGER = LoggerFactory.getLogger(XAFlightRecorder.class);
+	
+	public final static String EVENT_PREFIX = "com.sxb.lin.atomikos.dubbo.";
+	
+	private final static String CATEGORY = "Transactions Dubbo";
+	
+	private final static String[] FIELDS = {"tid", "xid", "resource", "remoteAddress", "result"};
+	
+	private final static String[] FIELD_LABELS = {"Transaction Id", "Xid", "Unique Resource Name", "Remote Address", "Result"};
+	
+	private static Object[] factories;
+	
+	private static Object[] eventTypes;
+	
+	private static Method newEvent;
+	
+	private static Method isEnabled;
+	
+	private static Method begin;
+	
+	private static Method end;
+	
+	private static Method commit;
+	
+	private static Method set;
+	
+	private static boolean available;
+	
+	static {
+		if(!"false".equals(System.getProperty("transactions.dubbo.jfr"))){
+			try {
+				init();
+				available = true;
+			} catch (Throwable e) {
+				LOGGER.debug("jdk.jfr is not available,xa flight recorder events are disabled.", e);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static void init() throws Exception {
+		Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+		Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+		Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+		Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+		Class<?> eventClass = Class.forName("jdk.jfr.Event");
+		Class<? extends Annotation> nameClass = (Class<? extends Annotation>) Class.forName("jdk.jfr.Name");
+		Class<? extends Annotation> labelClass = (Class<? extends Annotation>) Class.forName("jdk.jfr.Label");
+		Class<? extends Annotation> categoryClass = (Class<? extends Annotation>) Class.forName("jdk.jfr.Category");
+		Class<? extends Annotation> stackTraceClass = (Class<? extends Annotation>) Class.forName("jdk.jfr.StackTrace");
+		Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+		Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+		Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+		
+		List<Object> fields = new ArrayList<Object>();
+		for(int i = 0;i < FIELDS.length;i++){
+			Object label = annotationElement.newInstance(labelClass, FIELD_LABELS[i]);
+			fields.add(valueDescriptor.newInstance(String.class, FIELDS[i], Collections.singletonList(label)));
+		}
+		
+		XAEventType[] types = XAEventType.values();
+		Object[] factories = new Object[types.length];
+		Object[] eventTypes = new Object[types.length];
+		Method getEventType = eventFactoryClass.getMethod("getEventType");
+		Method register = eventFactoryClass.getMethod("register");
+		for(int i = 0;i < types.length;i++){
+			List<Object> annotations = Arrays.asList(
+					annotationElement.newInstance(nameClass, EVENT_PREFIX + types[i].getName()),
+					annotationElement.newInstance(labelClass, types[i].getLabel()),
+					annotationElement.newInstance(categoryClass, new String[]{CATEGORY}),
+					annotationElement.newInstance(stackTraceClass, Boolean.FALSE));
+			factories[i] = create.invoke(null, annotations, fields);
+			register.invoke(factories[i]);
+			eventTypes[i] = getEventType.invoke(factories[i]);
+		}
+		
+		XAFlightRecorder.newEvent = eventFactoryClass.getMethod("newEvent");
+		XAFlightRecorder.isEnabled = eventTypeClass.getMethod("isEnabled");
+		XAFlightRecorder.begin = eventClass.getMethod("begin");
+		XAFlightRecorder.end = eventClass.getMethod("end");
+		XAFlightRecorder.commit = eventClass.getMethod("commit");
+		XAFlightRecorder.set = eventClass.getMethod("set", int.class, Object.class);
+		XAFlightRecorder.factories = factories;
+		XAFlightRecorder.eventTypes = eventTypes;
+	}
+	
+	public static boolean isAvailable(){
+		return available;
+	}
+	
+	/**
+	 * null when jfr is missing or no recording enables this event.
+	 */
+	public static XAFlightEvent begin(XAEventType type){
+		if(!available){
+			return null;
+		}
+		try {
+			int i = type.ordinal();
+			if(!((Boolean) isEnabled.invoke(eventTypes[i])).booleanValue()){
+				return null;
+			}
+			Object event = newEvent.invoke(factories[i]);
+			begin.invoke(event);
+			return new XAFlightEvent(event);
+		} catch (Exception e) {
+			LOGGER.debug(e.getMessage(), e);
+			return null;
+		}
+	}
+	
+	static void commit(Object event, String... values){
+		try {
+			end.invoke(event);
+			for(int i = 0;i < values.length;i++){
+				set.invoke(event, i, values[i]);
+			}
+			commit.invoke(event);
+		} catch (Exception e) {
+			LOGGER.debug(e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.sxb.lin.atomikos.dubbo.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sxb.lin.atomikos.dubbo.pool.XAResourcePoolStatsMXBean;
+
+/**
+ * One LatencyHistogram per unique resource name or remote address and operation,
+ * created on first use. The branch operations of a resource and the call operations of an address
+ * are registered to the platform MBeanServer as
+ * com.sxb.lin.atomikos.dubbo:type=XAMetrics,scope=resource|address,name=..,operation=..
+ * and the pool gauges as com.sxb.lin.atomikos.dubbo:type=XAResourcePool
+ */
+public class DefaultXAMetrics implements XAMetrics {
+	
+	private final static Logger LOGGER = LoggerFactory.getLogger(DefaultXAMetrics.class);
+	
+	public final static String JMX_DOMAIN = "com.sxb.lin.atomikos.dubbo";
+	
+	private final static String POOL_OBJECT_NAME = JMX_DOMAIN + ":type=XAResourcePool";
+	
+	private final static String RESOURCE = "resource";
+	
+	private final static String ADDRESS = "address";
+	
+	private final ConcurrentMap<String, LatencyHistogram[]> resources = new ConcurrentHashMap<String, LatencyHistogram[]>();
+	
+	private final ConcurrentMap<String, LatencyHistogram[]> addresses = new ConcurrentHashMap<String, LatencyHistogram[]>();
+	
+	private final boolean jmx;
+	
+	private volatile XAResourcePoolStatsMXBean poolStats;
+	
+	public DefaultXAMetrics() {
+		this(true);
+	}
+
+	public DefaultXAMetrics(boolean jmx) {
+		this.jmx = jmx;
+	}
+
+	public void recordBranch(String uniqueResourceName, XAOperation operation, long nanos, boolean success) {
+		this.histograms(resources, RESOURCE, uniqueResourceName)[operation.ordinal()].record(nanos, success);
+	}
+
+	public void recordCall(String remoteAddress, XAOperation operation, long nanos, boolean success) {
+		this.histograms(addresses, ADDRESS, remoteAddress)[operation.ordinal()].record(nanos, success);
+	}
+	
+	public void bindPool(XAResourcePoolStatsMXBean stats) {
+		this.poolStats = stats;
+		if(!jmx){
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(POOL_OBJECT_NAME);
+			if(server.isRegistered(objectName)){
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(stats, objectName);
+		} catch (Exception e) {
+			LOGGER.warn("can not register xa resource pool stats to jmx.", e);
+		}
+	}
+	
+	public XAResourcePoolStatsMXBean getPoolStats() {
+		return poolStats;
+	}
+	
+	public LatencyHistogram getResourceHistogram(String uniqueResourceName, XAOperation operation){
+		return this.histograms(resources, RESOURCE, uniqueResourceName)[operation.ordinal()];
+	}
+	
+	public LatencyHistogram getAddressHistogram(String remoteAddress, XAOperation operation){
+		return this.histograms(addresses, ADDRESS, remoteAddress)[operation.ordinal()];
+	}
+	
+	public Map<String, LatencyHistogram[]> getResourceHistograms() {
+		return resources;
+	}
+
+	public Map<String, LatencyHistogram[]> getAddressHistograms() {
+		return addresses;
+	}
+	
+	/**
+	 * unregister every histogram from jmx.
+	 */
+	public void close(){
+		if(!jmx){
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		this.unregister(server, RESOURCE, resources);
+		this.unregister(server, ADDRESS, addresses);
+		if(poolStats != null){
+			try {
+				ObjectName objectName = new ObjectName(POOL_OBJECT_NAME);
+				if(server.isRegistered(objectName)){
+					server.unregisterMBean(objectName);
+				}
+			} catch (Exception e) {
+				LOGGER.warn(e.getMessage(), e);
+			}
+		}
+	}
+	
+	private LatencyHistogram[] histograms(ConcurrentMap<String, LatencyHistogram[]> map, String scope, String name){
+		if(name == null){
+			name = "unknown";
+		}
+		LatencyHistogram[] histograms = map.get(name);
+		if(histograms != null){
+			return histograms;
+		}
+		XAOperation[] operations = XAOperation.values();
+		histograms = new LatencyHistogram[operations.length];
+		for(int i = 0;i < histograms.length;i++){
+			histograms[i] = new LatencyHistogram();
+		}
+		LatencyHistogram[] exist = map.putIfAbsent(name, histograms);
+		if(exist != null){
+			return exist;
+		}
+		if(jmx){
+			this.register(scope, name, histograms);
+		}
+		return histograms;
+	}
+	
+	private void register(String scope, String name, LatencyHistogram[] histograms){
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		XAOperation[] operations = XAOperation.values();
+		for(int i = 0;i < operations.length;i++){
+			if(operations[i].isBranch() != scope.equals(RESOURCE)){
+				continue;
+			}
+			try {
+				ObjectName objectName = this.objectName(scope, name, operations[i]);
+				if(!server.isRegistered(objectName)){
+					server.registerMBean(histograms[i], objectName);
+				}
+			} catch (Exception e) {
+				LOGGER.warn("can not register xa metrics " + scope + " " + name + " to jmx.", e);
+				return;
+			}
+		}
+	}
+	
+	private void unregister(MBeanServer server, String scope, Map<String, LatencyHistogram[]> map){
+		for(String name : map.keySet()){
+			for(XAOperation operation : XAOperation.values()){
+				try {
+					ObjectName objectName = this.objectName(scope, name, operation);
+					if(server.isRegistered(objectName)){
+						server.unregisterMBean(objectName);
+					}
+				} catch (Exception e) {
+					LOGGER.warn(e.getMessage(), e);
+				}
+			}
+		}
+	}
+	
+	private ObjectName objectName(String scope, String name, XAOperation operation) throws Exception {
+		return new ObjectName(JMX_DOMAIN + ":type=XAMetrics,scope=" + scope 
+				+ ",name=" + ObjectName.quote(name) + ",operation=" + operation.getName());
+	}
+}
@@ -0,0 +1,128 @@
+package com.sxb.lin.atomikos.dubbo.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of microseconds: values below 8 have their own bucket,
+ * every power of two above is split in 4 buckets,so the error is at most 25%.
+ * recording is one array increment and two atomic adds,the max is kept by cas.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+	
+	private final static int LINEAR = 8;
+	
+	private final static int SUB_BUCKET_BITS = 2;
+	
+	private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	private final static int BUCKETS = LINEAR + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + SUB_BUCKETS;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	
+	private final AtomicLong count = new AtomicLong();
+	
+	private final AtomicLong failures = new AtomicLong();
+	
+	private final AtomicLong sum = new AtomicLong();
+	
+	private final AtomicLong max = new AtomicLong();
+	
+	public void record(long nanos, boolean success){
+		long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+		buckets.incrementAndGet(index(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+		if(!success){
+			failures.incrementAndGet();
+		}
+		long current = max.get();
+		while(micros > current && !max.compareAndSet(current, micros)){
+			current = max.get();
+		}
+	}
+	
+	static int index(long micros){
+		if(micros < LINEAR){
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+	}
+	
+	static long upperBound(int index){
+		if(index < LINEAR){
+			return index;
+		}
+		int exponent = (index - LINEAR) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		long sub = (index - LINEAR) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (sub + 1) * width - 1;
+	}
+	
+	/**
+	 * percentile between 0 and 1,the buckets are read without a snapshot,
+	 * so a concurrent record may or may not be seen.
+	 */
+	public long getPercentile(double percentile){
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for(int i = 0;i < BUCKETS;i++){
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if(total == 0){
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile * total);
+		long seen = 0;
+		for(int i = 0;i < BUCKETS;i++){
+			seen += snapshot[i];
+			if(seen >= rank){
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getP50() {
+		return this.getPercentile(0.5);
+	}
+
+	public long getP99() {
+		return this.getPercentile(0.99);
+	}
+
+	public long getP999() {
+		return this.getPercentile(0.999);
+	}
+
+	public void reset() {
+		for(int i = 0;i < BUCKETS;i++){
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		failures.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,23 @@
+package com.sxb.lin.atomikos.dubbo.metrics;
+
+/**
+ * latencies in microseconds,percentiles are the upper bound of their bucket.
+ */
+public interface LatencyHistogramMXBean {
+
+	long getCount();
+	
+	long getFailures();
+	
+	double getMean();
+	
+	long getMax();
+	
+	long getP50();
+	
+	long getP99();
+	
+	long getP999();
+	
+	void reset();
+}
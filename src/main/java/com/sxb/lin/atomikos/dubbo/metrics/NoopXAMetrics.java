@@ -0,0 +1,24 @@
+package com.sxb.lin.atomikos.dubbo.metrics;
+
+import com.sxb.lin.atomikos.dubbo.pool.XAResourcePoolStatsMXBean;
+
+public class NoopXAMetrics implements XAMetrics {
+	
+	public final static NoopXAMetrics INSTANCE = new NoopXAMetrics();
+	
+	private NoopXAMetrics() {
+		
+	}
+
+	public void recordBranch(String uniqueResourceName, XAOperation operation, long nanos, boolean success) {
+		
+	}
+
+	public void recordCall(String remoteAddress, XAOperation operation, long nanos, boolean success) {
+		
+	}
+
+	public void bindPool(XAResourcePoolStatsMXBean stats) {
+		
+	}
+}
@@ -0,0 +1,25 @@
+package com.sxb.lin.atomikos.dubbo.metrics;
+
+import com.sxb.lin.atomikos.dubbo.pool.XAResourcePoolStatsMXBean;
+
+/**
+ * metrics spi,set by DubboTransactionManagerServiceConfig.setMetrics.
+ * called on the transaction path,implementations must not block.
+ */
+public interface XAMetrics {
+
+	/**
+	 * a state transition of a pooled branch,timed around the local driver call.
+	 */
+	void recordBranch(String uniqueResourceName, XAOperation operation, long nanos, boolean success);
+	
+	/**
+	 * a call of DubboTransactionManagerServiceProxy,async calls are timed until the response arrives.
+	 */
+	void recordCall(String remoteAddress, XAOperation operation, long nanos, boolean success);
+	
+	/**
+	 * the gauges of the XAResourcePool,called once at init,read them when scraped.
+	 */
+	void bindPool(XAResourcePoolStatsMXBean stats);
+}
@@ -0,0 +1,50 @@
+package com.sxb.lin.atomikos.dubbo.metrics;
+
+/**
+ * START to DISCONNECT are the state transitions of XAResourceHolder,
+ * the others are the calls DubboTransactionManagerServiceProxy makes.
+ */
+public enum XAOperation {
+	
+	START,
+	
+	END,
+	
+	PREPARE,
+	
+	COMMIT,
+	
+	ROLLBACK,
+	
+	CLOSE,
+	
+	DISCONNECT,
+	
+	ENLIST,
+	
+	ASYNC_ENLIST,
+	
+	BATCH_PREPARE,
+	
+	ASYNC_BATCH_PREPARE,
+	
+	BATCH_COMMIT,
+	
+	BATCH_ROLLBACK,
+	
+	RECOVER,
+	
+	PING,
+	
+	WAS_COMMITTED,
+	
+	BATCH_WAS_COMMITTED;
+	
+	public boolean isBranch(){
+		return this.ordinal() <= DISCONNECT.ordinal();
+	}
+	
+	public String getName(){
+		return this.name().toLowerCase();
+	}
+}
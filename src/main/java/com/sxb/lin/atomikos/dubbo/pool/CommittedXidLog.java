@@ -0,0 +1,174 @@
+package com.sxb.lin.atomikos.dubbo.pool;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.transaction.xa.Xid;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.dubbo.common.io.Bytes;
+import com.sxb.lin.atomikos.dubbo.service.DubboXid;
+
+/**
+ * Durable markers of the branches committed by this participant,so a commit retried after a
+ * restart is still known as committed and a rollback of it still reports XA_HEURCOM.
+ * Markers of one phase commits are forced to disk,the file is rewritten with the live markers
+ * once it holds twice as many records.
+ */
+public class CommittedXidLog {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(CommittedXidLog.class);
+	
+	private final static String FILE_NAME = "dubbo-committed-xid.log";
+	
+	private final static String SEPARATOR = "\t";
+	
+	private final static int MIN_COMPACT_RECORDS = 1024;
+	
+	private final File file;
+	
+	private FileChannel channel;
+	
+	private int records;
+	
+	public CommittedXidLog(String logBaseDir) {
+		this.file = new File(logBaseDir, FILE_NAME);
+	}
+	
+	/**
+	 * the markers not expired yet,the file is rewritten with them.
+	 */
+	public synchronized Map<Xid, Long> init() throws IOException {
+		Map<Xid, Long> committedXids = this.read();
+		File dir = file.getParentFile();
+		if(dir != null && !dir.exists()){
+			dir.mkdirs();
+		}
+		this.rewrite(committedXids);
+		return committedXids;
+	}
+	
+	private Map<Xid, Long> read() throws IOException {
+		Map<Xid, Long> committedXids = new HashMap<Xid, Long>();
+		if(!file.exists()){
+			return committedXids;
+		}
+		long now = System.currentTimeMillis();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line = null;
+			while((line = reader.readLine()) != null){
+				String[] array = line.split(SEPARATOR, -1);
+				if(array.length != 4){
+					continue;
+				}
+				try {
+					long expireTime = Long.parseLong(array[3]);
+					if(expireTime >= now){
+						committedXids.put(new DubboXid(Integer.parseInt(array[0]), 
+								Bytes.hex2bytes(array[1]), Bytes.hex2bytes(array[2])), expireTime);
+					}
+				} catch (RuntimeException e) {
+					LOGGER.warn("committed xid record {} is broken,ignore it.", line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return committedXids;
+	}
+	
+	public synchronized void append(Xid xid, long expireTime, boolean force){
+		if(channel == null){
+			return;
+		}
+		try {
+			this.write(this.line(xid, expireTime));
+			records++;
+			if(force){
+				channel.force(false);
+			}
+		} catch (IOException e) {
+			LOGGER.error("committed xid " + xid + " can not be written.", e);
+		}
+	}
+	
+	/**
+	 * rewrites the file when the appended records outgrow the live markers.
+	 */
+	public synchronized void compact(Map<Xid, Long> committedXids){
+		if(channel == null || records < MIN_COMPACT_RECORDS || records < committedXids.size() * 2){
+			return;
+		}
+		try {
+			this.rewrite(committedXids);
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * the markers are forced to a temp file first,which then replaces the log in one atomic move.
+	 * a crash never leaves a log without the markers.
+	 */
+	private void rewrite(Map<Xid, Long> committedXids) throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for(Map.Entry<Xid, Long> entry : committedXids.entrySet()){
+			builder.append(this.line(entry.getKey(), entry.getValue()));
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		FileChannel tempChannel = new RandomAccessFile(temp, "rw").getChannel();
+		try {
+			tempChannel.truncate(0);
+			ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes("UTF-8"));
+			while(buffer.hasRemaining()){
+				tempChannel.write(buffer);
+			}
+			tempChannel.force(false);
+		} finally {
+			tempChannel.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		if(channel != null){
+			channel.close();
+		}
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		records = committedXids.size();
+	}
+	
+	private String line(Xid xid, long expireTime){
+		return xid.getFormatId() + SEPARATOR + Bytes.bytes2hex(xid.getGlobalTransactionId()) + SEPARATOR 
+				+ Bytes.bytes2hex(xid.getBranchQualifier()) + SEPARATOR + expireTime + "\n";
+	}
+	
+	private void write(String str) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(str.getBytes("UTF-8"));
+		channel.position(channel.size());
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+	}
+	
+	public synchronized void close(){
+		if(channel != null){
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage(), e);
+			}
+			channel = null;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.sxb.lin.atomikos.dubbo.pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.transaction.xa.Xid;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sxb.lin.atomikos.dubbo.service.StartXid;
+
+/**
+ * Hashed timing wheel,every pooled XAResourceHolder is expired within one tick after
+ * its start time + timeout.
+ */
+public class ExpiryWheel implements Runnable {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExpiryWheel.class);
+
+	public final static int DEFAULT_WHEEL_SIZE = 512;
+
+	private final XAResourcePool xaResourcePool;
+
+	private final long tickMillis;
+
+	private final long startTime;
+
+	private final List<Set<Expiration>> buckets;
+
+	private final ConcurrentMap<Xid, Expiration> expirations = new ConcurrentHashMap<Xid, Expiration>();
+
+	private volatile long currentTick;
+
+	public ExpiryWheel(XAResourcePool xaResourcePool, long tickMillis, int wheelSize) {
+		if(tickMillis <= 0){
+			throw new IllegalArgumentException("tickMillis must be greater than 0.");
+		}
+		this.xaResourcePool = xaResourcePool;
+		this.tickMillis = tickMillis;
+		this.startTime = System.currentTimeMillis();
+		this.buckets = new ArrayList<Set<Expiration>>(wheelSize);
+		for(int i = 0;i < wheelSize;i++){
+			buckets.add(Collections.newSetFromMap(new ConcurrentHashMap<Expiration, Boolean>()));
+		}
+	}
+
+	public void add(XAResourceHolder xaResourceHolder){
+		StartXid startXid = xaResourceHolder.getStartXid();
+		long expireTime = startXid.getStartTime() + startXid.getTimeout();
+		long tick = Math.max((expireTime - startTime + tickMillis - 1) / tickMillis, currentTick + 1);
+		Expiration expiration = new Expiration(tick, startXid.getXid(), xaResourceHolder);
+		Expiration old = expirations.put(expiration.xid, expiration);
+		if(old != null){
+			this.getBucket(old.tick).remove(old);
+		}
+		this.getBucket(tick).add(expiration);
+		//the sweeper may have passed the tick before the entry was in its bucket,move it to the next tick
+		long current;
+		while(expiration.tick <= (current = currentTick)){
+			Expiration next = new Expiration(current + 1, expiration.xid, xaResourceHolder);
+			if(!expirations.replace(next.xid, expiration, next)){
+				break;
+			}
+			this.getBucket(expiration.tick).remove(expiration);
+			this.getBucket(next.tick).add(next);
+			expiration = next;
+		}
+	}
+
+	public void remove(Xid xid){
+		Expiration expiration = expirations.remove(xid);
+		if(expiration != null){
+			this.getBucket(expiration.tick).remove(expiration);
+		}
+	}
+
+	public int size(){
+		return expirations.size();
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+	public void run() {
+		long tick = (System.currentTimeMillis() - startTime) / tickMillis;
+		long from = Math.max(currentTick + 1, tick - buckets.size() + 1);
+		for(long t = from;t <= tick;t++){
+			currentTick = t;
+			this.expire(t);
+		}
+	}
+
+	private void expire(long tick){
+		Set<Expiration> bucket = this.getBucket(tick);
+		for(Expiration expiration : bucket){
+			if(expiration.tick > tick){
+				continue;
+			}
+			bucket.remove(expiration);
+			if(!expirations.remove(expiration.xid, expiration)){
+				continue;
+			}
+			try {
+				xaResourcePool.expire(expiration.xid, expiration.xaResourceHolder);
+			} catch (RuntimeException e) {
+				LOGGER.error(e.getMessage(), e);
+			}
+		}
+	}
+
+	private Set<Expiration> getBucket(long tick){
+		return buckets.get((int) (tick % buckets.size()));
+	}
+
+	private static class Expiration {
+
+		private final long tick;
+
+		private final Xid xid;
+
+		private final XAResourceHolder xaResourceHolder;
+
+		Expiration(long tick, Xid xid, XAResourceHolder xaResourceHolder) {
+			this.tick = tick;
+			this.xid = xid;
+			this.xaResourceHolder = xaResourceHolder;
+		}
+	}
+}
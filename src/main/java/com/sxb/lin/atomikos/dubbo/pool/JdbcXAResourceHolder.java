@@ -6,12 +6,16 @@ import java.sql.SQLException;
 import javax.sql.XAConnection;
 import javax.transaction.xa.XAResource;
 
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
+
 public class JdbcXAResourceHolder extends XAResourceHolder{
 	
 	private XAConnection xaConnection;
 	
 	private Connection connection;
 	
+	private volatile boolean written;
+	
 	public JdbcXAResourceHolder(String dubboUniqueResourceName, String uuid,
 			XAConnection xaConnection, Connection connection, XAResource xaResource) {
 		super(dubboUniqueResourceName, uuid, xaResource);
@@ -27,6 +31,19 @@ public class JdbcXAResourceHolder extends XAResourceHolder{
 		return connection;
 	}
 	
+	public boolean isWritten() {
+		return written;
+	}
+	
+	public void markWritten() {
+		this.written = true;
+	}
+	
+	@Override
+	protected boolean isReadOnly() {
+		return !written && DubboTransactionManagerServiceProxy.getInstance().isReadOnlyBranch();
+	}
+	
 	@Override
 	protected void disconnect() {
 		try {
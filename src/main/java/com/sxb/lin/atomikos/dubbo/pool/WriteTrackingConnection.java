@@ -0,0 +1,118 @@
+package com.sxb.lin.atomikos.dubbo.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/**
+ * Marks the JdbcXAResourceHolder as written as soon as a statement that is not a plain query
+ * is prepared or executed on the connection. Statements and metadata are wrapped as well,so
+ * their getConnection returns the tracked connection,and any unwrap counts as a write.
+ */
+public class WriteTrackingConnection implements InvocationHandler {
+
+	private static final String[] READ_PREFIXES = {"select", "show", "explain", "desc", "describe"};
+
+	private static final String[] LOCK_SUFFIXES = {"for update", "lock in share mode", "for share"};
+
+	private static final String[] WRITE_KEYWORDS = {" into ", "nextval(", "setval("};
+
+	private final Object target;
+
+	private final JdbcXAResourceHolder xaResourceHolder;
+
+	private Connection connection;
+
+	private WriteTrackingConnection(Object target, JdbcXAResourceHolder xaResourceHolder, Connection connection) {
+		this.target = target;
+		this.xaResourceHolder = xaResourceHolder;
+		this.connection = connection;
+	}
+
+	public static Connection wrap(Connection connection, JdbcXAResourceHolder xaResourceHolder){
+		WriteTrackingConnection handler = new WriteTrackingConnection(connection, xaResourceHolder, null);
+		Connection proxy = (Connection) Proxy.newProxyInstance(WriteTrackingConnection.class.getClassLoader(),
+				new Class<?>[]{Connection.class}, handler);
+		handler.connection = proxy;
+		return proxy;
+	}
+
+	/**
+	 * statements and metadata of the connection,their getConnection gives back the tracked connection.
+	 */
+	private Object wrap(Object object, Class<?> type){
+		return Proxy.newProxyInstance(WriteTrackingConnection.class.getClassLoader(),
+				new Class<?>[]{type}, new WriteTrackingConnection(object, xaResourceHolder, connection));
+	}
+
+	public static boolean isWrite(String sql){
+		if(sql == null){
+			return true;
+		}
+		String str = sql.trim().toLowerCase().replaceAll("\\s+", " ");
+		while(str.startsWith("/*") && str.indexOf("*/") > 0){
+			str = str.substring(str.indexOf("*/") + 2).trim();
+		}
+		while(str.startsWith("(")){
+			str = str.substring(1).trim();
+		}
+		for(String suffix : LOCK_SUFFIXES){
+			if(str.contains(suffix)){
+				return true;
+			}
+		}
+		for(String keyword : WRITE_KEYWORDS){
+			if(str.contains(keyword)){
+				return true;
+			}
+		}
+		for(String prefix : READ_PREFIXES){
+			if(str.startsWith(prefix)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if(name.equals("getConnection") && !(target instanceof Connection)){
+			return connection;
+		}
+		if(!xaResourceHolder.isWritten()){
+			if(name.equals("prepareCall") || name.equals("unwrap")){
+				//the unwrapped object runs statements the proxy can not see
+				xaResourceHolder.markWritten();
+			}else if(args != null && args.length > 0 && args[0] instanceof String
+					&& (name.startsWith("prepare") || name.startsWith("execute") || name.equals("addBatch"))){
+				if(isWrite((String) args[0])){
+					xaResourceHolder.markWritten();
+				}
+			}
+		}
+		Object result;
+		try {
+			result = method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+		if(target instanceof Connection){
+			if(result instanceof CallableStatement){
+				return this.wrap(result, CallableStatement.class);
+			}else if(result instanceof PreparedStatement){
+				return this.wrap(result, PreparedStatement.class);
+			}else if(result instanceof Statement){
+				return this.wrap(result, Statement.class);
+			}else if(result instanceof DatabaseMetaData){
+				return this.wrap(result, DatabaseMetaData.class);
+			}
+		}
+		return result;
+	}
+}
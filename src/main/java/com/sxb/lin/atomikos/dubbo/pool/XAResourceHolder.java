@@ -1,5 +1,7 @@
 package com.sxb.lin.atomikos.dubbo.pool;
 
+import java.util.concurrent.Future;
+
 import javax.transaction.RollbackException;
 import javax.transaction.SystemException;
 import javax.transaction.xa.XAException;
@@ -10,6 +12,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.sxb.lin.atomikos.dubbo.ParticipantXATransactionLocal;
+import com.sxb.lin.atomikos.dubbo.jfr.XAEventType;
+import com.sxb.lin.atomikos.dubbo.jfr.XAFlightEvent;
+import com.sxb.lin.atomikos.dubbo.jfr.XAFlightRecorder;
+import com.sxb.lin.atomikos.dubbo.metrics.XAOperation;
 import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
 import com.sxb.lin.atomikos.dubbo.service.StartXid;
 
@@ -44,6 +50,12 @@ public abstract class XAResourceHolder {
 	
 	private String tmAddress;
 	
+	private XAResourcePoolStats stats;
+	
+	private boolean pooled;
+	
+	private long pooledTime;
+	
 	public XAResourceHolder(String dubboUniqueResourceName, String uuid, XAResource xaResource) {
 		this.uuid = uuid;
 		this.dubboUniqueResourceName = dubboUniqueResourceName;
@@ -58,13 +70,40 @@ public abstract class XAResourceHolder {
 		}else if(this.currentStatus == XA_UNKNOWN){
 			ParticipantXATransactionLocal current = ParticipantXATransactionLocal.current();
 			DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
-			this.startXid = instance.enlistResource(current.getTmAddress(), dubboUniqueResourceName, 
-					current.getTid(), instance.getLocalAddress());
-			this.xaResource.start(this.startXid.getXid(), this.startXid.getFlags());
-			this.currentStatus = XA_START;
+			Xid xid = instance.createBranchXid(current.getTmAddress(), current.getTid());
+			if(xid == null){
+				this.startXid = instance.enlistResource(current.getTmAddress(), dubboUniqueResourceName, 
+						current.getTid(), instance.getLocalAddress());
+			}else{
+				long startTime = System.currentTimeMillis();
+				StartXid startXid = new StartXid();
+				startXid.setXid(xid);
+				startXid.setFlags(XAResource.TMNOFLAGS);
+				startXid.setStartTime(startTime);
+				startXid.setTimeout(Long.parseLong(current.getTimeOut()) - startTime);
+				startXid.setTmAddress(current.getTmAddress());
+				this.startXid = startXid;
+			}
+			long start = System.nanoTime();
+			XAFlightEvent event = XAFlightRecorder.begin(XAEventType.START);
+			boolean success = false;
+			try {
+				this.xaResource.start(this.startXid.getXid(), this.startXid.getFlags());
+				success = true;
+			} finally {
+				this.record(XAOperation.START, start, success);
+				this.flight(event, success ? "ok" : "fail");
+			}
+			this.setCurrentStatus(XA_START);
 			
 			XAResourcePool xaResourcePool = instance.getXaResourcePool();
 			xaResourcePool.addXAResourceHolder(this);
+			
+			if(xid != null){
+				Future<StartXid> future = instance.asyncEnlistResource(current.getTmAddress(), dubboUniqueResourceName, 
+						current.getTid(), instance.getLocalAddress(), xid);
+				current.addEnlistFuture(this, future);
+			}
 		}else{
 			throw new XAException("xaResource can not xa satrt,currentStatus value " 
 					+ this.getStrCurrentStatus(currentStatus) + " is error.");
@@ -75,8 +114,17 @@ public abstract class XAResourceHolder {
 		if(this.currentStatus == XA_END){
 			return;
 		}else if(this.currentStatus == XA_START){
-			this.xaResource.end(this.startXid.getXid(), XAResource.TMSUCCESS);
-			this.currentStatus = XA_END;
+			long start = System.nanoTime();
+			XAFlightEvent event = XAFlightRecorder.begin(XAEventType.END);
+			boolean success = false;
+			try {
+				this.xaResource.end(this.startXid.getXid(), XAResource.TMSUCCESS);
+				success = true;
+			} finally {
+				this.record(XAOperation.END, start, success);
+				this.flight(event, success ? "ok" : "fail");
+			}
+			this.setCurrentStatus(XA_END);
 		}else if(this.currentStatus == XA_UNKNOWN){
 			this.close();
 		}else{
@@ -92,9 +140,25 @@ public abstract class XAResourceHolder {
 		if(this.currentStatus == XA_PREPARE){
 			return XAResource.XA_OK;
 		}else if(this.currentStatus == XA_END){
-			int prepare = this.xaResource.prepare(xid);
-			this.currentStatus = XA_PREPARE;
-			return prepare;
+			long start = System.nanoTime();
+			XAFlightEvent event = XAFlightRecorder.begin(XAEventType.PREPARE);
+			boolean success = false;
+			int prepare = XAResource.XA_RDONLY;
+			try {
+				if(this.isReadOnly()){
+					this.xaResource.commit(xid, true);
+					this.setCurrentStatus(XA_COMMIT);
+					success = true;
+					return prepare;
+				}
+				prepare = this.xaResource.prepare(xid);
+				this.setCurrentStatus(prepare == XAResource.XA_RDONLY ? XA_COMMIT : XA_PREPARE);
+				success = true;
+				return prepare;
+			} finally {
+				this.record(XAOperation.PREPARE, start, success);
+				this.flight(event, success ? (prepare == XAResource.XA_RDONLY ? "rdonly" : "ok") : "fail");
+			}
 		}else{
 			throw new XAException("xaResource can not xa prepare,currentStatus value " 
 					+ this.getStrCurrentStatus(currentStatus) + " is error.");
@@ -111,14 +175,12 @@ public abstract class XAResourceHolder {
 			if(onePhase){
 				throw new XAException("xaResource can not xa commit one phase,xa prepare already executed.");
 			}
-			this.xaResource.commit(xid, onePhase);
-			this.currentStatus = XA_COMMIT;
+			this.doCommit(xid, onePhase);
 		}else if(this.currentStatus == XA_END){
 			if(!onePhase){
 				throw new XAException("xaResource can not xa commit,xa prepare are not execute.");
 			}
-			this.xaResource.commit(xid, onePhase);
-			this.currentStatus = XA_COMMIT;
+			this.doCommit(xid, onePhase);
 		}else{
 			throw new XAException("xaResource can not xa commit,currentStatus value " 
 					+ this.getStrCurrentStatus(currentStatus) + " is error.");
@@ -131,18 +193,81 @@ public abstract class XAResourceHolder {
 		}
 		if(this.currentStatus == XA_ROLLBACK){
 			return;
-		}else if(this.currentStatus == XA_PREPARE){
-			this.xaResource.rollback(xid);
-			this.currentStatus = XA_ROLLBACK;
-		}else if(this.currentStatus == XA_END){
-			this.xaResource.rollback(xid);
-			this.currentStatus = XA_ROLLBACK;
+		}else if(this.currentStatus == XA_PREPARE || this.currentStatus == XA_END){
+			long start = System.nanoTime();
+			XAFlightEvent event = XAFlightRecorder.begin(XAEventType.ROLLBACK);
+			boolean success = false;
+			try {
+				this.xaResource.rollback(xid);
+				success = true;
+			} finally {
+				this.record(XAOperation.ROLLBACK, start, success);
+				this.flight(event, success ? "ok" : "fail");
+			}
+			this.setCurrentStatus(XA_ROLLBACK);
 		}else{
 			throw new XAException("xaResource can not xa rollback,currentStatus value " 
 					+ this.getStrCurrentStatus(currentStatus) + " is error.");
 		}
 	}
 	
+	private void doCommit(Xid xid, boolean onePhase) throws XAException {
+		long start = System.nanoTime();
+		XAFlightEvent event = XAFlightRecorder.begin(XAEventType.COMMIT);
+		boolean success = false;
+		try {
+			this.xaResource.commit(xid, onePhase);
+			success = true;
+		} finally {
+			this.record(XAOperation.COMMIT, start, success);
+			this.flight(event, success ? (onePhase ? "one phase" : "ok") : "fail");
+		}
+		this.setCurrentStatus(XA_COMMIT);
+	}
+	
+	private void setCurrentStatus(int currentStatus){
+		if(pooled){
+			stats.transition(this.currentStatus, currentStatus);
+		}
+		this.currentStatus = currentStatus;
+	}
+	
+	/**
+	 * counted by the pool stats from now on.
+	 */
+	synchronized void pooled(XAResourcePoolStats stats){
+		if(pooled){
+			return;
+		}
+		this.stats = stats;
+		this.pooled = true;
+		this.pooledTime = System.currentTimeMillis();
+		stats.added(dubboUniqueResourceName, tmAddress, currentStatus, pooledTime);
+	}
+	
+	synchronized void unpooled(){
+		if(!pooled){
+			return;
+		}
+		this.pooled = false;
+		stats.removed(dubboUniqueResourceName, tmAddress, currentStatus, pooledTime);
+	}
+	
+	private void record(XAOperation operation, long start, boolean success){
+		this.record(dubboUniqueResourceName, operation, start, success);
+	}
+	
+	private void record(String uniqueResourceName, XAOperation operation, long start, boolean success){
+		DubboTransactionManagerServiceProxy.getInstance().getMetrics()
+				.recordBranch(uniqueResourceName, operation, System.nanoTime() - start, success);
+	}
+	
+	private void flight(XAFlightEvent event, String result){
+		if(event != null){
+			event.commit(startXid.getXid(), dubboUniqueResourceName, tmAddress, result);
+		}
+	}
+	
 	public String getUuid() {
 		return uuid;
 	}
@@ -170,34 +295,49 @@ public abstract class XAResourceHolder {
 	public synchronized void close() {
 		if(currentStatus == CLOSE){
 			return;
-		}else if(currentStatus == XA_START){
+		}
+		String uniqueResourceName = dubboUniqueResourceName;
+		long start = System.nanoTime();
+		XAOperation operation = XAOperation.CLOSE;
+		if(currentStatus == XA_START){
 			try {
 				this.xaResource.end(this.startXid.getXid(), XAResource.TMSUCCESS);
-				this.currentStatus = XA_END;
+				this.setCurrentStatus(XA_END);
 				this.xaResource.rollback(this.startXid.getXid());
-				this.currentStatus = XA_ROLLBACK;
+				this.setCurrentStatus(XA_ROLLBACK);
 				LOGGER.error("XAResource currentStatus is XA_START,status is error,maybe the transaction is not over.");
 				this.doClose();
 			} catch (XAException e) {
 				LOGGER.error(e.getMessage(),e);
+				operation = XAOperation.DISCONNECT;
 				this.disconnect();
 			}
 		}else if(currentStatus == XA_END){
 			try {
 				this.xaResource.rollback(this.startXid.getXid());
-				this.currentStatus = XA_ROLLBACK;
+				this.setCurrentStatus(XA_ROLLBACK);
 				LOGGER.error("XAResource currentStatus is XA_END,status is error,Maybe the transaction is not over.");
 				this.doClose();
 			} catch (XAException e) {
 				LOGGER.error(e.getMessage(),e);
+				operation = XAOperation.DISCONNECT;
 				this.disconnect();
 			}
 		}else if(currentStatus == XA_PREPARE){
 			LOGGER.error("XAResource currentStatus is XA_PREPARE,the transaction is not over,please check atomikos recover().");
+			operation = XAOperation.DISCONNECT;
 			this.disconnect();
 		}else{
 			this.doClose();
 		}
+		if(operation == XAOperation.DISCONNECT && stats != null){
+			stats.disconnected();
+		}
+		this.record(uniqueResourceName, operation, start, true);
+	}
+	
+	public String getStrCurrentStatus(){
+		return this.getStrCurrentStatus(currentStatus);
 	}
 	
 	protected String getStrCurrentStatus(int currentStatus){
@@ -232,6 +372,7 @@ public abstract class XAResourceHolder {
 	}
 	
 	protected void clear(){
+		this.unpooled();
 		currentStatus = CLOSE;
 		xaResource = null;
 		startXid = null;
@@ -240,6 +381,13 @@ public abstract class XAResourceHolder {
 		tmAddress = null;
 	}
 	
+	/**
+	 * a read only branch is committed in one phase at prepare and votes XA_RDONLY.
+	 */
+	protected boolean isReadOnly(){
+		return false;
+	}
+	
 	protected abstract void disconnect();
 	
 	protected abstract void doClose();
@@ -1,12 +1,15 @@
 package com.sxb.lin.atomikos.dubbo.pool;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -18,7 +21,11 @@ import javax.transaction.xa.Xid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sxb.lin.atomikos.dubbo.jfr.XAEventType;
+import com.sxb.lin.atomikos.dubbo.jfr.XAFlightEvent;
+import com.sxb.lin.atomikos.dubbo.jfr.XAFlightRecorder;
 import com.sxb.lin.atomikos.dubbo.pool.recover.RecoverXAResource;
+import com.sxb.lin.atomikos.dubbo.pool.recover.RecoverXAResourcePool;
 import com.sxb.lin.atomikos.dubbo.pool.recover.UniqueResource;
 import com.sxb.lin.atomikos.dubbo.rocketmq.MQProducerFor2PC;
 import com.sxb.lin.atomikos.dubbo.service.StartXid;
@@ -26,39 +33,95 @@ import com.sxb.lin.atomikos.dubbo.service.StartXid;
 public class XAResourcePool implements Runnable{
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(XAResourcePool.class);
+	
+	public final static long DEFAULT_EXPIRY_TICK_MILLIS = 100;
 
 	private Map<String,UniqueResource> uniqueResourceMapping;
 	
+	private RecoverXAResourcePool recoverXAResourcePool = new RecoverXAResourcePool();
+	
 	private Map<Xid,XAResourceHolder> cachePool = new ConcurrentHashMap<Xid, XAResourceHolder>();
 	
+	private Map<Xid,Long> committedXids = new ConcurrentHashMap<Xid, Long>();
+	
+	private CommittedXidLog committedXidLog;
+	
+	private ConcurrentMap<String,Set<XAResourceHolder>> tmAddressIndex = new ConcurrentHashMap<String, Set<XAResourceHolder>>();
+	
+	private ExpiryWheel expiryWheel;
+	
+	private XAResourcePoolStats stats = new XAResourcePoolStats();
+	
+	private long lastExpired;
+	
+	private long lastDisconnected;
+	
 	private ScheduledExecutorService scheduledExecutorService;
 	
 	
 	public XAResourcePool(Map<String, UniqueResource> uniqueResourceMapping) {
+		this(uniqueResourceMapping, DEFAULT_EXPIRY_TICK_MILLIS);
+	}
+	
+	public XAResourcePool(Map<String, UniqueResource> uniqueResourceMapping, long expiryTickMillis) {
 		super();
 		this.uniqueResourceMapping = uniqueResourceMapping;
+		this.expiryWheel = new ExpiryWheel(this, expiryTickMillis, ExpiryWheel.DEFAULT_WHEEL_SIZE);
 		this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+		scheduledExecutorService.scheduleAtFixedRate(expiryWheel, expiryTickMillis, expiryTickMillis, TimeUnit.MILLISECONDS);
 		scheduledExecutorService.scheduleAtFixedRate(this, 30, 30, TimeUnit.SECONDS);
 	}
 	
 	public void addXAResourceHolder(XAResourceHolder xaResourceHolder){
-		cachePool.put(xaResourceHolder.getStartXid().getXid(), xaResourceHolder);
+		StartXid startXid = xaResourceHolder.getStartXid();
+		cachePool.put(startXid.getXid(), xaResourceHolder);
+		
+		String tmAddress = xaResourceHolder.getTmAddress();
+		while(true){
+			Set<XAResourceHolder> holders = tmAddressIndex.get(tmAddress);
+			if(holders == null){
+				Set<XAResourceHolder> newHolders = Collections.newSetFromMap(new ConcurrentHashMap<XAResourceHolder, Boolean>());
+				holders = tmAddressIndex.putIfAbsent(tmAddress, newHolders);
+				if(holders == null){
+					holders = newHolders;
+				}
+			}
+			holders.add(xaResourceHolder);
+			//the set may have been removed as empty in the meantime
+			if(tmAddressIndex.get(tmAddress) == holders){
+				break;
+			}
+		}
+		
+		expiryWheel.add(xaResourceHolder);
+		xaResourceHolder.pooled(stats);
 	}
 	
 	public void removeXAResourceHolder(XAResourceHolder xaResourceHolder){
-		this.cachePool.remove(xaResourceHolder.getStartXid().getXid());
+		Xid xid = xaResourceHolder.getStartXid().getXid();
+		this.cachePool.remove(xid);
+		expiryWheel.remove(xid);
+		String tmAddress = xaResourceHolder.getTmAddress();
+		Set<XAResourceHolder> holders = tmAddressIndex.get(tmAddress);
+		if(holders != null && holders.remove(xaResourceHolder) && holders.isEmpty()){
+			tmAddressIndex.remove(tmAddress, holders);
+		}
+		xaResourceHolder.unpooled();
+	}
+	
+	/**
+	 * snapshot of the pooled branches.
+	 */
+	public List<XAResourceHolder> getXAResourceHolders(){
+		return new ArrayList<XAResourceHolder>(cachePool.values());
 	}
 	
 	public List<XAResourceHolder> getDisconnectedHolderByTmAddress(String tmAddress){
-		Set<Entry<Xid, XAResourceHolder>> set = cachePool.entrySet();
-		List<XAResourceHolder> list = new ArrayList<XAResourceHolder>();
-		for(Entry<Xid, XAResourceHolder> entry : set){
-			XAResourceHolder xaResourceHolder = entry.getValue();
-			if(xaResourceHolder.getTmAddress().equals(tmAddress)){
-				list.add(xaResourceHolder);
-			}
+		Set<XAResourceHolder> holders = tmAddressIndex.get(tmAddress);
+		if(holders == null){
+			return new ArrayList<XAResourceHolder>();
 		}
-		return list;
+		return new ArrayList<XAResourceHolder>(holders);
 	}
 	
 	protected RecoverXAResource getRecoverXAResource(String uniqueResourceName) throws SQLException{
@@ -70,7 +133,7 @@ public class XAResourcePool implements Runnable{
 			return null;
 		}
 		
-		return uniqueResource.getRecoverXAResource();
+		return recoverXAResourcePool.borrow(uniqueResourceName, uniqueResource);
 	}
 	
 	protected void closeRecoverXAResource(RecoverXAResource recoverXAResource){
@@ -80,13 +143,35 @@ public class XAResourcePool implements Runnable{
 	}
 	
 	public Xid[] recover(int flag, String uniqueResourceName) throws XAException {
+		return this.recover(flag, uniqueResourceName, XidFilter.ALL);
+	}
+	
+	/**
+	 * only the xids accepted by the filter are returned,the others are dropped before
+	 * they are converted or serialized.
+	 */
+	public Xid[] recover(int flag, String uniqueResourceName, XidFilter filter) throws XAException {
 		
 		RecoverXAResource recoverXAResource = null;
 		try {
 			recoverXAResource = this.getRecoverXAResource(uniqueResourceName);
 			if(recoverXAResource != null){
 				XAResource xaResource = recoverXAResource.getXAResource();
-				return xaResource.recover(flag);
+				Xid[] xids = xaResource.recover(flag);
+				if(xids == null || filter.isAll()){
+					return xids;
+				}
+				List<Xid> accepted = new ArrayList<Xid>();
+				for(Xid xid : xids){
+					if(filter.accept(xid)){
+						accepted.add(xid);
+					}
+				}
+				if(accepted.size() < xids.length){
+					LOGGER.debug("{} recover {} xids,{} not owned are filtered.", 
+							uniqueResourceName, xids.length, xids.length - accepted.size());
+				}
+				return accepted.toArray(new Xid[accepted.size()]);
 			}
 		} catch (SQLException e) {
 			LOGGER.error(e.getMessage(), e);
@@ -100,7 +185,12 @@ public class XAResourcePool implements Runnable{
 	public int prepare(Xid xid) throws XAException {
 		XAResourceHolder xaResourceHolder = this.cachePool.get(xid);
 		if(xaResourceHolder != null){
-			return xaResourceHolder.prepare(xid);
+			int prepare = xaResourceHolder.prepare(xid);
+			if(prepare == XAResource.XA_RDONLY){
+				this.removeXAResourceHolder(xaResourceHolder);
+				xaResourceHolder.close();
+			}
+			return prepare;
 		}else{
 			throw new XAException("XAResourceHolder is not exist.");
 		}
@@ -109,9 +199,17 @@ public class XAResourcePool implements Runnable{
 	public void commit(Xid xid, boolean onePhase, String uniqueResourceName) throws XAException {
 		XAResourceHolder xaResourceHolder = this.cachePool.get(xid);
 		if(xaResourceHolder != null){
+			StartXid startXid = xaResourceHolder.getStartXid();
 			xaResourceHolder.commit(xid, onePhase);
+			long expireTime = startXid.getStartTime() + startXid.getTimeout();
+			committedXids.put(xid, expireTime);
+			if(committedXidLog != null){
+				committedXidLog.append(xid, expireTime, onePhase);
+			}
 			this.removeXAResourceHolder(xaResourceHolder);
 			xaResourceHolder.close();
+		}else if(committedXids.containsKey(xid)){
+			LOGGER.warn("xid {} has been committed,ignore the repeated commit.", xid);
 		}else{
 			RecoverXAResource recoverXAResource = null;
 			try {
@@ -139,6 +237,10 @@ public class XAResourcePool implements Runnable{
 			xaResourceHolder.rollback(xid);
 			this.removeXAResourceHolder(xaResourceHolder);
 			xaResourceHolder.close();
+		}else if(committedXids.containsKey(xid)){
+			XAException e = new XAException("xid " + xid + " has been committed,can not rollback.");
+			e.errorCode = XAException.XA_HEURCOM;
+			throw e;
 		}else{
 			RecoverXAResource recoverXAResource = null;
 			try {
@@ -160,23 +262,67 @@ public class XAResourcePool implements Runnable{
 		}
 	}
 
+	public XAResourcePoolStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * committed xids are persisted by the log and the ones still live are loaded from it.
+	 */
+	public void setCommittedXidLog(CommittedXidLog committedXidLog) throws IOException {
+		committedXids.putAll(committedXidLog.init());
+		this.committedXidLog = committedXidLog;
+	}
+
+	public void close(){
+		scheduledExecutorService.shutdownNow();
+		recoverXAResourcePool.close();
+		if(committedXidLog != null){
+			committedXidLog.close();
+		}
+	}
+
 	public void run() {
-		Set<Entry<Xid, XAResourceHolder>> set = cachePool.entrySet();
-		LOGGER.info(set.size()+" size XAResourceHolder has been check is time out.");
-		for(Entry<Xid, XAResourceHolder> entry : set){
-			XAResourceHolder xaResourceHolder = entry.getValue();
-			StartXid startXid = xaResourceHolder.getStartXid();
-			long startTime = startXid.getStartTime();
-			long timeout = startXid.getTimeout();
-			long expireTime = startTime + timeout;
-			if(expireTime < System.currentTimeMillis()){
-				LOGGER.error("UUID " + xaResourceHolder.getUuid() + " is expired,it will be close.");
-				this.removeXAResourceHolder(xaResourceHolder);
-				xaResourceHolder.close();
-			}else{
-				long remaining = expireTime - System.currentTimeMillis();
-				LOGGER.info("UUID " + xaResourceHolder.getUuid() + " is not expired,"+remaining+" milliseconds remaining.");
+		for(Entry<Xid, Long> entry : committedXids.entrySet()){
+			if(entry.getValue().longValue() < System.currentTimeMillis()){
+				committedXids.remove(entry.getKey());
 			}
 		}
+		if(committedXidLog != null){
+			committedXidLog.compact(committedXids);
+		}
+		stats.purge();
+		int evicted = recoverXAResourcePool.evict();
+		if(evicted > 0){
+			LOGGER.debug("{} idle recover connections evicted,{} idle.", evicted, recoverXAResourcePool.getIdleSize());
+		}
+		int size = cachePool.size();
+		long expired = stats.getExpiredCount();
+		long disconnected = stats.getDisconnectedCount();
+		if(size > 0 || expired != lastExpired || disconnected != lastDisconnected){
+			LOGGER.info("{} size XAResourceHolder in pool({} start,{} end,{} prepare,oldest {}s),{} size waiting for expiry,{} expired,{} disconnected.", 
+					size, stats.getStartCount(), stats.getEndCount(), stats.getPrepareCount(), stats.getOldestAge(), 
+					expiryWheel.size(), expired, disconnected);
+		}else if(LOGGER.isDebugEnabled()){
+			LOGGER.debug("XAResourcePool is empty,{} expired,{} disconnected.", expired, disconnected);
+		}
+		lastExpired = expired;
+		lastDisconnected = disconnected;
+	}
+	
+	void expire(Xid xid, XAResourceHolder xaResourceHolder){
+		if(cachePool.get(xid) != xaResourceHolder){
+			return;
+		}
+		LOGGER.error("UUID {} is expired,it will be close.", xaResourceHolder.getUuid());
+		XAFlightEvent event = XAFlightRecorder.begin(XAEventType.EXPIRE);
+		String uniqueResourceName = xaResourceHolder.getDubboUniqueResourceName();
+		String tmAddress = xaResourceHolder.getTmAddress();
+		stats.expired();
+		this.removeXAResourceHolder(xaResourceHolder);
+		xaResourceHolder.close();
+		if(event != null){
+			event.commit(xid, uniqueResourceName, tmAddress, "closed");
+		}
 	}
 }
@@ -0,0 +1,187 @@
+package com.sxb.lin.atomikos.dubbo.pool;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sxb.lin.atomikos.dubbo.metrics.LatencyHistogram;
+
+/**
+ * Counts kept up to date by XAResourceHolder while it is pooled,a scrape reads the counters
+ * and never walks the pool. Ages come from the number of holders pooled in each second,
+ * so a scrape costs one entry per second of the oldest age.
+ */
+public class XAResourcePoolStats implements XAResourcePoolStatsMXBean {
+	
+	private final static long[] AGE_BOUNDS = {1, 5, 10, 30, 60, 300};
+	
+	private final AtomicInteger size = new AtomicInteger();
+	
+	private final AtomicIntegerArray statusCounts = new AtomicIntegerArray(XAResourceHolder.CLOSE + 1);
+	
+	private final ConcurrentMap<String, AtomicInteger> resourceCounts = new ConcurrentHashMap<String, AtomicInteger>();
+	
+	private final ConcurrentMap<String, AtomicInteger> tmAddressCounts = new ConcurrentHashMap<String, AtomicInteger>();
+	
+	private final ConcurrentMap<Long, AtomicInteger> secondCounts = new ConcurrentHashMap<Long, AtomicInteger>();
+	
+	private final AtomicLong expired = new AtomicLong();
+	
+	private final AtomicLong disconnected = new AtomicLong();
+	
+	private final LatencyHistogram lifetime = new LatencyHistogram();
+	
+	void added(String uniqueResourceName, String tmAddress, int status, long time){
+		size.incrementAndGet();
+		statusCounts.incrementAndGet(status);
+		this.counter(resourceCounts, uniqueResourceName).incrementAndGet();
+		this.counter(tmAddressCounts, tmAddress).incrementAndGet();
+		this.counter(secondCounts, time / 1000).incrementAndGet();
+	}
+	
+	void removed(String uniqueResourceName, String tmAddress, int status, long time){
+		size.decrementAndGet();
+		statusCounts.decrementAndGet(status);
+		this.counter(resourceCounts, uniqueResourceName).decrementAndGet();
+		this.counter(tmAddressCounts, tmAddress).decrementAndGet();
+		this.counter(secondCounts, time / 1000).decrementAndGet();
+		lifetime.record(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - time), true);
+	}
+	
+	void transition(int from, int to){
+		statusCounts.decrementAndGet(from);
+		statusCounts.incrementAndGet(to);
+	}
+	
+	void expired(){
+		expired.incrementAndGet();
+	}
+	
+	void disconnected(){
+		disconnected.incrementAndGet();
+	}
+	
+	/**
+	 * drop the emptied counters,only seconds before the current one,
+	 * no holder is added to them anymore.
+	 */
+	void purge(){
+		long second = System.currentTimeMillis() / 1000;
+		for(Entry<Long, AtomicInteger> entry : secondCounts.entrySet()){
+			if(entry.getKey().longValue() < second && entry.getValue().get() <= 0){
+				secondCounts.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+	
+	private <K> AtomicInteger counter(ConcurrentMap<K, AtomicInteger> counters, K key){
+		AtomicInteger counter = counters.get(key);
+		if(counter == null){
+			AtomicInteger newCounter = new AtomicInteger();
+			counter = counters.putIfAbsent(key, newCounter);
+			if(counter == null){
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+	
+	private Map<String, Integer> positive(Map<String, AtomicInteger> counters){
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for(Entry<String, AtomicInteger> entry : counters.entrySet()){
+			int count = entry.getValue().get();
+			if(count > 0){
+				map.put(entry.getKey(), count);
+			}
+		}
+		return map;
+	}
+
+	public int getSize() {
+		return size.get();
+	}
+
+	public int getStartCount() {
+		return statusCounts.get(XAResourceHolder.XA_START);
+	}
+
+	public int getEndCount() {
+		return statusCounts.get(XAResourceHolder.XA_END);
+	}
+
+	public int getPrepareCount() {
+		return statusCounts.get(XAResourceHolder.XA_PREPARE);
+	}
+
+	public Map<String, Integer> getCountByResource() {
+		return this.positive(resourceCounts);
+	}
+
+	public Map<String, Integer> getCountByTmAddress() {
+		return this.positive(tmAddressCounts);
+	}
+
+	/**
+	 * pooled holders by age,keys are the upper bound in seconds,the last one has no bound.
+	 */
+	public Map<String, Integer> getAgeHistogram() {
+		int[] counts = new int[AGE_BOUNDS.length + 1];
+		long second = System.currentTimeMillis() / 1000;
+		for(Entry<Long, AtomicInteger> entry : secondCounts.entrySet()){
+			int count = entry.getValue().get();
+			if(count <= 0){
+				continue;
+			}
+			long age = second - entry.getKey().longValue();
+			int i = 0;
+			while(i < AGE_BOUNDS.length && age >= AGE_BOUNDS[i]){
+				i++;
+			}
+			counts[i] += count;
+		}
+		Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+		for(int i = 0;i < AGE_BOUNDS.length;i++){
+			map.put("<" + AGE_BOUNDS[i] + "s", counts[i]);
+		}
+		map.put(">=" + AGE_BOUNDS[AGE_BOUNDS.length - 1] + "s", counts[AGE_BOUNDS.length]);
+		return map;
+	}
+
+	public long getOldestAge() {
+		long second = System.currentTimeMillis() / 1000;
+		long oldest = second;
+		for(Entry<Long, AtomicInteger> entry : secondCounts.entrySet()){
+			if(entry.getValue().get() > 0 && entry.getKey().longValue() < oldest){
+				oldest = entry.getKey().longValue();
+			}
+		}
+		return second - oldest;
+	}
+
+	public long getExpiredCount() {
+		return expired.get();
+	}
+
+	public long getDisconnectedCount() {
+		return disconnected.get();
+	}
+
+	public long getLifetimeP50() {
+		return lifetime.getP50();
+	}
+
+	public long getLifetimeP99() {
+		return lifetime.getP99();
+	}
+
+	public long getLifetimeMax() {
+		return lifetime.getMax();
+	}
+}
@@ -0,0 +1,35 @@
+package com.sxb.lin.atomikos.dubbo.pool;
+
+import java.util.Map;
+
+/**
+ * gauges and counters of the pooled XA branches,ages in seconds,lifetimes in microseconds.
+ */
+public interface XAResourcePoolStatsMXBean {
+
+	int getSize();
+	
+	int getStartCount();
+	
+	int getEndCount();
+	
+	int getPrepareCount();
+	
+	Map<String, Integer> getCountByResource();
+	
+	Map<String, Integer> getCountByTmAddress();
+	
+	Map<String, Integer> getAgeHistogram();
+	
+	long getOldestAge();
+	
+	long getExpiredCount();
+	
+	long getDisconnectedCount();
+	
+	long getLifetimeP50();
+	
+	long getLifetimeP99();
+	
+	long getLifetimeMax();
+}
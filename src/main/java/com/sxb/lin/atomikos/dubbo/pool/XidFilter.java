@@ -0,0 +1,46 @@
+package com.sxb.lin.atomikos.dubbo.pool;
+
+import javax.transaction.xa.Xid;
+
+import com.sxb.lin.atomikos.dubbo.service.DubboXid;
+
+/**
+ * the xids owned by one coordinator: the format id,any when negative,and the tid prefix,
+ * any when null. matched on the raw XAResource.recover output.
+ */
+public class XidFilter {
+	
+	public final static XidFilter ALL = new XidFilter(-1, null);
+	
+	private final int formatId;
+	
+	private final byte[] tidPrefix;
+	
+	public XidFilter(int formatId, String tidPrefix) {
+		this.formatId = formatId;
+		this.tidPrefix = tidPrefix == null || tidPrefix.length() == 0 ? null : tidPrefix.getBytes();
+	}
+
+	public boolean accept(Xid xid){
+		if(formatId >= 0 && xid.getFormatId() != formatId){
+			return false;
+		}
+		if(tidPrefix == null){
+			return true;
+		}
+		byte[] tid = DubboXid.globalTransactionIdOf(xid);
+		if(tid == null || tid.length < tidPrefix.length){
+			return false;
+		}
+		for(int i = 0;i < tidPrefix.length;i++){
+			if(tid[i] != tidPrefix[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	public boolean isAll(){
+		return formatId < 0 && tidPrefix == null;
+	}
+}
@@ -0,0 +1,148 @@
+package com.sxb.lin.atomikos.dubbo.pool.recover;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+/**
+ * returned to the RecoverXAResourcePool on close,broken once the resource reports
+ * a failure of the connection.
+ */
+class PooledRecoverXAResource implements RecoverXAResource, XAResource {
+	
+	final RecoverXAResourcePool pool;
+	
+	final String uniqueResourceName;
+	
+	private final RecoverXAResource delegate;
+	
+	volatile long lastUsed;
+	
+	volatile boolean borrowed;
+	
+	volatile boolean broken;
+
+	PooledRecoverXAResource(RecoverXAResourcePool pool, String uniqueResourceName, RecoverXAResource delegate) {
+		this.pool = pool;
+		this.uniqueResourceName = uniqueResourceName;
+		this.delegate = delegate;
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	public void close() {
+		if(!borrowed){
+			return;
+		}
+		borrowed = false;
+		pool.release(this);
+	}
+	
+	void destroy(){
+		delegate.close();
+	}
+
+	public XAResource getXAResource() {
+		return this;
+	}
+	
+	RecoverXAResource getDelegate() {
+		return delegate;
+	}
+	
+	private XAException failed(XAException e){
+		if(e.errorCode == XAException.XAER_RMFAIL || e.errorCode == XAException.XAER_RMERR){
+			broken = true;
+		}
+		return e;
+	}
+	
+	private RuntimeException failed(RuntimeException e){
+		broken = true;
+		return e;
+	}
+
+	public void commit(Xid xid, boolean onePhase) throws XAException {
+		try {
+			delegate.getXAResource().commit(xid, onePhase);
+		} catch (XAException e) {
+			throw this.failed(e);
+		} catch (RuntimeException e) {
+			throw this.failed(e);
+		}
+	}
+
+	public void end(Xid xid, int flags) throws XAException {
+		try {
+			delegate.getXAResource().end(xid, flags);
+		} catch (XAException e) {
+			throw this.failed(e);
+		} catch (RuntimeException e) {
+			throw this.failed(e);
+		}
+	}
+
+	public void forget(Xid xid) throws XAException {
+		try {
+			delegate.getXAResource().forget(xid);
+		} catch (XAException e) {
+			throw this.failed(e);
+		} catch (RuntimeException e) {
+			throw this.failed(e);
+		}
+	}
+
+	public int getTransactionTimeout() throws XAException {
+		return delegate.getXAResource().getTransactionTimeout();
+	}
+
+	public boolean isSameRM(XAResource xares) throws XAException {
+		if(xares instanceof PooledRecoverXAResource){
+			xares = ((PooledRecoverXAResource) xares).delegate.getXAResource();
+		}
+		return delegate.getXAResource().isSameRM(xares);
+	}
+
+	public int prepare(Xid xid) throws XAException {
+		try {
+			return delegate.getXAResource().prepare(xid);
+		} catch (XAException e) {
+			throw this.failed(e);
+		} catch (RuntimeException e) {
+			throw this.failed(e);
+		}
+	}
+
+	public Xid[] recover(int flag) throws XAException {
+		try {
+			return delegate.getXAResource().recover(flag);
+		} catch (XAException e) {
+			throw this.failed(e);
+		} catch (RuntimeException e) {
+			throw this.failed(e);
+		}
+	}
+
+	public void rollback(Xid xid) throws XAException {
+		try {
+			delegate.getXAResource().rollback(xid);
+		} catch (XAException e) {
+			throw this.failed(e);
+		} catch (RuntimeException e) {
+			throw this.failed(e);
+		}
+	}
+
+	public boolean setTransactionTimeout(int seconds) throws XAException {
+		return delegate.getXAResource().setTransactionTimeout(seconds);
+	}
+
+	public void start(Xid xid, int flags) throws XAException {
+		try {
+			delegate.getXAResource().start(xid, flags);
+		} catch (XAException e) {
+			throw this.failed(e);
+		} catch (RuntimeException e) {
+			throw this.failed(e);
+		}
+	}
+}
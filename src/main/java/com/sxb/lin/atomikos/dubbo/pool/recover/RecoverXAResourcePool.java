@@ -0,0 +1,167 @@
+package com.sxb.lin.atomikos.dubbo.pool.recover;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.sql.XAConnection;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * idle recovery connections per unique resource,so replaying many xids reuses a few connections.
+ * a connection idle a while is validated before reuse,one failed by the resource is not returned.
+ */
+public class RecoverXAResourcePool {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(RecoverXAResourcePool.class);
+	
+	public final static int DEFAULT_MAX_IDLE = 4;
+	
+	public final static long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+	
+	public final static long DEFAULT_VALIDATE_IDLE_MILLIS = 10000;
+	
+	private final static int VALIDATE_TIMEOUT_SECONDS = 5;
+	
+	private final int maxIdle;
+	
+	private final long idleTimeoutMillis;
+	
+	private final long validateIdleMillis;
+	
+	private final ConcurrentMap<String, LinkedBlockingDeque<PooledRecoverXAResource>> idles = 
+			new ConcurrentHashMap<String, LinkedBlockingDeque<PooledRecoverXAResource>>();
+	
+	public RecoverXAResourcePool() {
+		this(DEFAULT_MAX_IDLE, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_VALIDATE_IDLE_MILLIS);
+	}
+
+	public RecoverXAResourcePool(int maxIdle, long idleTimeoutMillis, long validateIdleMillis) {
+		this.maxIdle = maxIdle;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.validateIdleMillis = validateIdleMillis;
+	}
+	
+	public RecoverXAResource borrow(String uniqueResourceName, UniqueResource uniqueResource){
+		LinkedBlockingDeque<PooledRecoverXAResource> deque = this.getIdles(uniqueResourceName);
+		PooledRecoverXAResource pooled = null;
+		while((pooled = deque.pollFirst()) != null){
+			if(System.currentTimeMillis() - pooled.lastUsed < validateIdleMillis || this.validate(pooled)){
+				pooled.borrowed = true;
+				return pooled;
+			}
+			pooled.destroy();
+		}
+		RecoverXAResource recoverXAResource = uniqueResource.getRecoverXAResource();
+		if(recoverXAResource == null){
+			return null;
+		}
+		pooled = new PooledRecoverXAResource(this, uniqueResourceName, recoverXAResource);
+		pooled.borrowed = true;
+		return pooled;
+	}
+	
+	void release(PooledRecoverXAResource pooled){
+		if(pooled.broken){
+			LOGGER.warn("recover connection of {} is broken,it will be close.", pooled.uniqueResourceName);
+			pooled.destroy();
+			return;
+		}
+		pooled.lastUsed = System.currentTimeMillis();
+		LinkedBlockingDeque<PooledRecoverXAResource> deque = this.getIdles(pooled.uniqueResourceName);
+		if(deque.size() >= maxIdle || !deque.offerFirst(pooled)){
+			pooled.destroy();
+		}
+	}
+	
+	/**
+	 * a jdbc connection is asked isValid,other resources only get a local isSameRM,
+	 * no recover scan is started for the check.
+	 */
+	private boolean validate(PooledRecoverXAResource pooled){
+		RecoverXAResource delegate = pooled.getDelegate();
+		try {
+			if(delegate instanceof JdbcRecoverXAResource){
+				return this.isValid(((JdbcRecoverXAResource) delegate).getXaConnection(), pooled.uniqueResourceName);
+			}
+			XAResource xaResource = delegate.getXAResource();
+			return xaResource.isSameRM(xaResource);
+		} catch (XAException e) {
+			LOGGER.warn("recover connection of {} is invalid,errorCode {}.", pooled.uniqueResourceName, e.errorCode);
+		} catch (SQLException e) {
+			LOGGER.warn("recover connection of " + pooled.uniqueResourceName + " is invalid.", e);
+		} catch (RuntimeException e) {
+			LOGGER.warn("recover connection of " + pooled.uniqueResourceName + " is invalid.", e);
+		}
+		return false;
+	}
+	
+	private boolean isValid(XAConnection xaConnection, String uniqueResourceName) throws SQLException {
+		Connection connection = xaConnection.getConnection();
+		try {
+			if(connection.isValid(VALIDATE_TIMEOUT_SECONDS)){
+				return true;
+			}
+			LOGGER.warn("recover connection of {} is invalid.", uniqueResourceName);
+			return false;
+		} finally {
+			connection.close();
+		}
+	}
+	
+	private LinkedBlockingDeque<PooledRecoverXAResource> getIdles(String uniqueResourceName){
+		LinkedBlockingDeque<PooledRecoverXAResource> deque = idles.get(uniqueResourceName);
+		if(deque == null){
+			deque = new LinkedBlockingDeque<PooledRecoverXAResource>();
+			LinkedBlockingDeque<PooledRecoverXAResource> old = idles.putIfAbsent(uniqueResourceName, deque);
+			if(old != null){
+				deque = old;
+			}
+		}
+		return deque;
+	}
+	
+	/**
+	 * closes the connections idle longer than the idle timeout.
+	 */
+	public int evict(){
+		int evicted = 0;
+		long time = System.currentTimeMillis() - idleTimeoutMillis;
+		for(LinkedBlockingDeque<PooledRecoverXAResource> deque : idles.values()){
+			Iterator<PooledRecoverXAResource> iterator = deque.descendingIterator();
+			while(iterator.hasNext()){
+				PooledRecoverXAResource pooled = iterator.next();
+				if(pooled.lastUsed < time && deque.removeLastOccurrence(pooled)){
+					pooled.destroy();
+					evicted++;
+				}
+			}
+		}
+		return evicted;
+	}
+	
+	public int getIdleSize(){
+		int size = 0;
+		for(Map.Entry<String, LinkedBlockingDeque<PooledRecoverXAResource>> entry : idles.entrySet()){
+			size += entry.getValue().size();
+		}
+		return size;
+	}
+	
+	public void close(){
+		for(LinkedBlockingDeque<PooledRecoverXAResource> deque : idles.values()){
+			PooledRecoverXAResource pooled = null;
+			while((pooled = deque.pollFirst()) != null){
+				pooled.destroy();
+			}
+		}
+	}
+}
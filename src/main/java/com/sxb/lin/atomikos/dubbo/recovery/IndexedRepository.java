@@ -0,0 +1,379 @@
+package com.sxb.lin.atomikos.dubbo.recovery;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ReflectionUtils;
+
+import com.atomikos.icatch.TransactionService;
+import com.atomikos.icatch.config.Configuration;
+import com.atomikos.recovery.CoordinatorLogEntry;
+import com.atomikos.recovery.LogException;
+import com.atomikos.recovery.LogReadException;
+import com.atomikos.recovery.LogWriteException;
+import com.atomikos.recovery.ParticipantLogEntry;
+import com.atomikos.recovery.RecoveryLog;
+import com.atomikos.recovery.Repository;
+import com.atomikos.recovery.TxState;
+import com.atomikos.recovery.imp.CachedRepository;
+import com.atomikos.recovery.imp.OltpLogImp;
+import com.atomikos.recovery.imp.RecoveryLogImp;
+import com.sxb.lin.atomikos.dubbo.rocketmq.MQProducerFor2PC;
+
+/**
+ * decorates the atomikos repository,every coordinator log entry written is indexed by tid
+ * and uri. terminated entries stay in the index for a bounded time,so an outcome is still
+ * known a while after atomikos dropped the entry. unfinished entries are bounded the same way,
+ * they are read from the repository once out of the index,and are dropped from the index
+ * when an atomikos checkpoint forgets them.
+ */
+public class IndexedRepository implements Repository {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(IndexedRepository.class);
+	
+	public final static int DEFAULT_MAX_TERMINATED = 10000;
+	
+	public final static long DEFAULT_TERMINATED_RETENTION_MILLIS = 300000;
+	
+	public final static int DEFAULT_MAX_UNFINISHED = 10000;
+	
+	public final static long DEFAULT_UNFINISHED_RETENTION_MILLIS = 300000;
+	
+	private final Repository repository;
+	
+	private final int maxTerminated;
+	
+	private final long terminatedRetentionMillis;
+	
+	private final int maxUnfinished;
+	
+	private final long unfinishedRetentionMillis;
+	
+	private final ConcurrentMap<String, Outcome> outcomes = new ConcurrentHashMap<String, Outcome>();
+	
+	private final ConcurrentLinkedQueue<Outcome> terminated = new ConcurrentLinkedQueue<Outcome>();
+	
+	private final AtomicInteger terminatedSize = new AtomicInteger();
+	
+	private final ConcurrentLinkedQueue<Outcome> unfinished = new ConcurrentLinkedQueue<Outcome>();
+	
+	private final AtomicInteger unfinishedSize = new AtomicInteger();
+	
+	private final RecoveryTracker recoveryTracker = new RecoveryTracker();
+	
+	public IndexedRepository(Repository repository) {
+		this(repository, DEFAULT_MAX_TERMINATED, DEFAULT_TERMINATED_RETENTION_MILLIS);
+	}
+
+	public IndexedRepository(Repository repository, int maxTerminated, long terminatedRetentionMillis) {
+		this(repository, maxTerminated, terminatedRetentionMillis, DEFAULT_MAX_UNFINISHED, DEFAULT_UNFINISHED_RETENTION_MILLIS);
+	}
+
+	public IndexedRepository(Repository repository, int maxTerminated, long terminatedRetentionMillis, 
+			int maxUnfinished, long unfinishedRetentionMillis) {
+		this.repository = repository;
+		this.maxTerminated = maxTerminated;
+		this.terminatedRetentionMillis = terminatedRetentionMillis;
+		this.maxUnfinished = maxUnfinished;
+		this.unfinishedRetentionMillis = unfinishedRetentionMillis;
+	}
+	
+	/**
+	 * puts an IndexedRepository between the atomikos logs and their repository,
+	 * null when atomikos is not started or is not assembled the default way.
+	 */
+	public static IndexedRepository install(){
+		TransactionService transactionService = Configuration.getTransactionService();
+		RecoveryLog recoveryLog = Configuration.getRecoveryLog();
+		if(transactionService == null || !(recoveryLog instanceof RecoveryLogImp)){
+			return null;
+		}
+		Object stateRecoveryManager = getField(transactionService, "recoverymanager_");
+		Object oltpLog = stateRecoveryManager == null ? null : getField(stateRecoveryManager, "oltpLog");
+		if(!(oltpLog instanceof OltpLogImp)){
+			LOGGER.warn("atomikos oltp log is {},coordinator log entries are not indexed.", oltpLog);
+			return null;
+		}
+		Repository repository = (Repository) getField(recoveryLog, "repository");
+		if(repository instanceof IndexedRepository){
+			return (IndexedRepository) repository;
+		}
+		if(repository == null || repository != getField(oltpLog, "repository")){
+			LOGGER.warn("atomikos logs do not share one repository,coordinator log entries are not indexed.");
+			return null;
+		}
+		IndexedRepository indexedRepository = new IndexedRepository(repository);
+		indexedRepository.listenCheckpoints();
+		((OltpLogImp) oltpLog).setRepository(indexedRepository);
+		((RecoveryLogImp) recoveryLog).setRepository(indexedRepository);
+		indexedRepository.load();
+		return indexedRepository;
+	}
+	
+	private static Object getField(Object target, String name){
+		Field field = ReflectionUtils.findField(target.getClass(), name);
+		if(field == null){
+			return null;
+		}
+		ReflectionUtils.makeAccessible(field);
+		return ReflectionUtils.getField(field, target);
+	}
+	
+	/**
+	 * atomikos purges orphaned entries in its checkpoint without a put,the checkpoint content
+	 * is written to the backup repository of the CachedRepository,so that one is decorated.
+	 */
+	private void listenCheckpoints(){
+		if(!(repository instanceof CachedRepository)){
+			LOGGER.warn("atomikos repository is {},purged coordinator log entries stay indexed until evicted.", repository);
+			return;
+		}
+		Field field = ReflectionUtils.findField(CachedRepository.class, "backupCoordinatorLogEntryRepository");
+		if(field == null){
+			LOGGER.warn("atomikos CachedRepository has no backup repository,purged coordinator log entries stay indexed until evicted.");
+			return;
+		}
+		ReflectionUtils.makeAccessible(field);
+		Repository backup = (Repository) ReflectionUtils.getField(field, repository);
+		if(!(backup instanceof CheckpointListeningRepository)){
+			ReflectionUtils.setField(field, repository, new CheckpointListeningRepository(backup, this));
+		}
+	}
+	
+	/**
+	 * the checkpoint content is every entry atomikos still keeps,
+	 * the unfinished outcomes and tracked entries not in it were purged.
+	 */
+	void checkpoint(Collection<CoordinatorLogEntry> checkpointContent){
+		Set<String> tids = new HashSet<String>(checkpointContent.size() * 2);
+		for(CoordinatorLogEntry entry : checkpointContent){
+			tids.add(entry.id);
+		}
+		for(Outcome outcome : outcomes.values()){
+			if(!outcome.terminated && !tids.contains(outcome.entry.id)){
+				outcomes.remove(outcome.entry.id, outcome);
+			}
+		}
+		recoveryTracker.retain(tids);
+	}
+	
+	/**
+	 * entries written since the install are newer than the ones loaded.
+	 */
+	private void load(){
+		try {
+			for(CoordinatorLogEntry entry : repository.getAllCoordinatorLogEntries()){
+				Outcome outcome = new Outcome(entry);
+				if(outcomes.putIfAbsent(entry.id, outcome) == null){
+					recoveryTracker.update(entry);
+					Outcome current = outcomes.get(entry.id);
+					if(current != null && current != outcome){
+						recoveryTracker.update(current.entry);
+					}
+				}
+			}
+		} catch (LogReadException e) {
+			LOGGER.error(e.getMessage(), e);
+		}
+	}
+
+	public void init() throws LogException {
+		repository.init();
+	}
+
+	public void put(String id, CoordinatorLogEntry coordinatorLogEntry) throws IllegalArgumentException, LogWriteException {
+		repository.put(id, coordinatorLogEntry);
+		Outcome outcome = new Outcome(coordinatorLogEntry);
+		outcomes.put(id, outcome);
+		recoveryTracker.update(coordinatorLogEntry);
+		if(outcome.terminated){
+			terminated.add(outcome);
+			terminatedSize.incrementAndGet();
+			this.evict(terminated, terminatedSize, maxTerminated, terminatedRetentionMillis);
+		}else{
+			unfinished.add(outcome);
+			unfinishedSize.incrementAndGet();
+			this.evict(unfinished, unfinishedSize, maxUnfinished, unfinishedRetentionMillis);
+		}
+	}
+	
+	private void evict(ConcurrentLinkedQueue<Outcome> queue, AtomicInteger size, int max, long retentionMillis){
+		long time = System.currentTimeMillis() - retentionMillis;
+		while(true){
+			Outcome outcome = queue.peek();
+			if(outcome == null || (size.get() <= max && outcome.time > time)){
+				return;
+			}
+			if(queue.remove(outcome)){
+				size.decrementAndGet();
+				outcomes.remove(outcome.entry.id, outcome);
+			}
+		}
+	}
+
+	public CoordinatorLogEntry get(String coordinatorId) throws LogReadException {
+		return repository.get(coordinatorId);
+	}
+
+	public Collection<CoordinatorLogEntry> findAllCommittingCoordinatorLogEntries() throws LogReadException {
+		return repository.findAllCommittingCoordinatorLogEntries();
+	}
+
+	public Collection<CoordinatorLogEntry> getAllCoordinatorLogEntries() throws LogReadException {
+		return repository.getAllCoordinatorLogEntries();
+	}
+
+	public void writeCheckpoint(Collection<CoordinatorLogEntry> checkpointContent) throws LogWriteException {
+		repository.writeCheckpoint(checkpointContent);
+	}
+
+	public void close() {
+		repository.close();
+	}
+	
+	/**
+	 * the last entry written for the tid,null when it is unknown or terminated too long ago.
+	 */
+	public CoordinatorLogEntry getCoordinatorLogEntry(String tid){
+		Outcome outcome = this.getOutcome(tid);
+		return outcome == null ? null : outcome.entry;
+	}
+	
+	public ParticipantLogEntry getParticipantLogEntry(String tid, String uri){
+		Outcome outcome = this.getOutcome(tid);
+		return outcome == null ? null : outcome.participants.get(uri);
+	}
+	
+	/**
+	 * an outcome evicted from the index is read from the repository,which still has it when
+	 * the transaction is unfinished.
+	 */
+	private Outcome getOutcome(String tid){
+		Outcome outcome = outcomes.get(tid);
+		if(outcome != null){
+			return outcome;
+		}
+		try {
+			CoordinatorLogEntry entry = repository.get(tid);
+			return entry == null ? null : new Outcome(entry);
+		} catch (LogReadException e) {
+			LOGGER.error(e.getMessage(), e);
+			return null;
+		}
+	}
+	
+	/**
+	 * the participant of the uri is terminated,or an mq participant of the transaction is.
+	 */
+	public boolean wasTerminated(String tid, String uri, String uniqueResourceName){
+		Outcome outcome = this.getOutcome(tid);
+		if(outcome == null){
+			return false;
+		}
+		ParticipantLogEntry entry = outcome.participants.get(uri);
+		if(entry != null && entry.state == TxState.TERMINATED){
+			return true;
+		}
+		if(outcome.mqTerminated != null){
+			String commiting = uri + "," + uniqueResourceName;
+			LOGGER.warn("{} is not find terminated,but {},{} is terminated.so terminated {}", 
+					commiting, outcome.mqTerminated.uri, outcome.mqTerminated.resourceName, commiting);
+			return true;
+		}
+		return false;
+	}
+	
+	public RecoveryTracker getRecoveryTracker() {
+		return recoveryTracker;
+	}
+	
+	public int size(){
+		return outcomes.size();
+	}
+	
+	/**
+	 * the backup repository of the CachedRepository,tells the index what a checkpoint kept.
+	 */
+	private static class CheckpointListeningRepository implements Repository {
+		
+		private final Repository repository;
+		
+		private final IndexedRepository indexedRepository;
+
+		CheckpointListeningRepository(Repository repository, IndexedRepository indexedRepository) {
+			this.repository = repository;
+			this.indexedRepository = indexedRepository;
+		}
+
+		public void init() throws LogException {
+			repository.init();
+		}
+
+		public void put(String id, CoordinatorLogEntry coordinatorLogEntry) throws IllegalArgumentException, LogWriteException {
+			repository.put(id, coordinatorLogEntry);
+		}
+
+		public CoordinatorLogEntry get(String coordinatorId) throws LogReadException {
+			return repository.get(coordinatorId);
+		}
+
+		public Collection<CoordinatorLogEntry> findAllCommittingCoordinatorLogEntries() throws LogReadException {
+			return repository.findAllCommittingCoordinatorLogEntries();
+		}
+
+		public Collection<CoordinatorLogEntry> getAllCoordinatorLogEntries() throws LogReadException {
+			return repository.getAllCoordinatorLogEntries();
+		}
+
+		public void writeCheckpoint(Collection<CoordinatorLogEntry> checkpointContent) throws LogWriteException {
+			repository.writeCheckpoint(checkpointContent);
+			indexedRepository.checkpoint(checkpointContent);
+		}
+
+		public void close() {
+			repository.close();
+		}
+	}
+	
+	private static class Outcome {
+		
+		private final CoordinatorLogEntry entry;
+		
+		private final Map<String, ParticipantLogEntry> participants;
+		
+		private final ParticipantLogEntry mqTerminated;
+		
+		private final boolean terminated;
+		
+		private final long time;
+
+		Outcome(CoordinatorLogEntry entry) {
+			this.entry = entry;
+			this.participants = new HashMap<String, ParticipantLogEntry>(entry.participants.length * 2);
+			ParticipantLogEntry mqTerminated = null;
+			for(ParticipantLogEntry participant : entry.participants){
+				if(!participant.coordinatorId.equals(entry.id)){
+					continue;
+				}
+				participants.put(participant.uri, participant);
+				if(mqTerminated == null && participant.state == TxState.TERMINATED 
+						&& participant.resourceName.startsWith(MQProducerFor2PC.MQ_UNIQUE_TOPIC_PREFIX)){
+					mqTerminated = participant;
+				}
+			}
+			this.mqTerminated = mqTerminated;
+			this.terminated = entry.getResultingState() == TxState.TERMINATED;
+			this.time = System.currentTimeMillis();
+		}
+	}
+}
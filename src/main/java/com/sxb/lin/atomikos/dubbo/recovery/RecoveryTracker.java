@@ -0,0 +1,135 @@
+package com.sxb.lin.atomikos.dubbo.recovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.atomikos.recovery.CoordinatorLogEntry;
+import com.atomikos.recovery.ParticipantLogEntry;
+import com.atomikos.recovery.TxState;
+
+/**
+ * keeps the unfinished coordinator log entries as they are written,a recovery pass only
+ * touches the entries expired since the last pass and the ones still expired. entries
+ * atomikos purges in a checkpoint are dropped when the checkpoint is written.
+ */
+public class RecoveryTracker {
+	
+	private final ConcurrentMap<String, CoordinatorLogEntry> unfinished = new ConcurrentHashMap<String, CoordinatorLogEntry>();
+	
+	private final ConcurrentMap<String, Boolean> expired = new ConcurrentHashMap<String, Boolean>();
+	
+	private final PriorityBlockingQueue<Pending> pendings = new PriorityBlockingQueue<Pending>();
+	
+	private final AtomicInteger unfinishedParticipants = new AtomicInteger();
+	
+	void update(CoordinatorLogEntry entry){
+		if(entry.getResultingState() == TxState.TERMINATED){
+			CoordinatorLogEntry old = unfinished.remove(entry.id);
+			if(old != null){
+				unfinishedParticipants.addAndGet(-old.participants.length);
+			}
+			expired.remove(entry.id);
+			return;
+		}
+		CoordinatorLogEntry old = unfinished.put(entry.id, entry);
+		unfinishedParticipants.addAndGet(entry.participants.length - (old == null ? 0 : old.participants.length));
+		if(old == null){
+			pendings.add(new Pending(entry.id, this.expires(entry)));
+		}
+	}
+	
+	/**
+	 * drops the unfinished entries not in the tids,the ones an atomikos checkpoint purged.
+	 */
+	void retain(Set<String> tids){
+		for(CoordinatorLogEntry entry : unfinished.values()){
+			if(!tids.contains(entry.id) && unfinished.remove(entry.id, entry)){
+				unfinishedParticipants.addAndGet(-entry.participants.length);
+				expired.remove(entry.id);
+			}
+		}
+	}
+	
+	/**
+	 * moves the entries expired at the time to the expired ones,
+	 * an entry updated with a later expiry is queued again.
+	 */
+	public void poll(long time){
+		while(true){
+			Pending pending = pendings.poll();
+			if(pending == null){
+				return;
+			}
+			if(pending.expires > time){
+				pendings.add(pending);
+				return;
+			}
+			CoordinatorLogEntry entry = unfinished.get(pending.tid);
+			if(entry == null){
+				continue;
+			}
+			long expires = this.expires(entry);
+			if(expires > time){
+				pendings.add(new Pending(pending.tid, expires));
+			}else{
+				expired.put(pending.tid, Boolean.TRUE);
+				if(!unfinished.containsKey(pending.tid)){
+					expired.remove(pending.tid);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * the last entries written for the expired transactions still unfinished.
+	 */
+	public List<CoordinatorLogEntry> getExpiredCoordinatorLogEntries(){
+		List<CoordinatorLogEntry> entries = new ArrayList<CoordinatorLogEntry>(expired.size());
+		for(String tid : expired.keySet()){
+			CoordinatorLogEntry entry = unfinished.get(tid);
+			if(entry == null){
+				expired.remove(tid);
+			}else{
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+	
+	public List<CoordinatorLogEntry> getUnfinishedCoordinatorLogEntries(){
+		return new ArrayList<CoordinatorLogEntry>(unfinished.values());
+	}
+	
+	public int getUnfinishedParticipants(){
+		return unfinishedParticipants.get();
+	}
+	
+	private long expires(CoordinatorLogEntry entry){
+		long expires = Long.MAX_VALUE;
+		for(ParticipantLogEntry participant : entry.participants){
+			expires = Math.min(expires, participant.expires);
+		}
+		return expires;
+	}
+	
+	private static class Pending implements Comparable<Pending> {
+		
+		private final String tid;
+		
+		private final long expires;
+
+		Pending(String tid, long expires) {
+			this.tid = tid;
+			this.expires = expires;
+		}
+
+		public int compareTo(Pending o) {
+			return expires < o.expires ? -1 : (expires == o.expires ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.sxb.lin.atomikos.dubbo.recovery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * recovers the resources of a pass in parallel,a pass waits for every resource at most the
+ * timeout after it started,or the timeout for it to start. a resource failed or timed out is skipped by the next passes
+ * until its backoff is over,a resource still running is skipped as well. the backoff doubles
+ * from 1 s with every failure in a row and stays at 300 s from the tenth.
+ */
+public class RecoveryWorkers {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(RecoveryWorkers.class);
+	
+	public final static int DEFAULT_THREADS = 4;
+	
+	public final static long DEFAULT_TIMEOUT_MILLIS = 30000;
+	
+	private final static long MIN_BACKOFF = 1000;
+	
+	private final static long MAX_BACKOFF = 300000;
+	
+	private final static int MAX_BACKOFF_SHIFT = 9;
+	
+	private final ThreadPoolExecutor executor;
+	
+	private final long timeoutMillis;
+	
+	private final Map<String, Backoff> backoffs = new ConcurrentHashMap<String, Backoff>();
+	
+	private final Map<String, Boolean> running = new ConcurrentHashMap<String, Boolean>();
+	
+	public RecoveryWorkers(int threads, long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			
+			private final AtomicInteger counter = new AtomicInteger();
+			
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "DubboXARecovery-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+	
+	public void recover(Collection<String> resourceNames, Recoverer recoverer){
+		List<Task> tasks = new ArrayList<Task>(resourceNames.size());
+		long now = System.currentTimeMillis();
+		for(String resourceName : resourceNames){
+			Backoff backoff = backoffs.get(resourceName);
+			if(backoff != null && backoff.time > now){
+				LOGGER.debug("{} failed {} times,recover after {}.", resourceName, backoff.failures, backoff.time);
+				continue;
+			}
+			if(running.containsKey(resourceName)){
+				LOGGER.debug("{} is still recovering.", resourceName);
+				continue;
+			}
+			Task task = new Task(resourceName, recoverer);
+			running.put(resourceName, Boolean.TRUE);
+			task.future = executor.submit(task);
+			tasks.add(task);
+		}
+		for(Task task : tasks){
+			this.await(task);
+		}
+	}
+	
+	private void await(Task task){
+		while(true){
+			long started = task.started;
+			long wait = started == 0 ? timeoutMillis : started + timeoutMillis - System.currentTimeMillis();
+			try {
+				task.future.get(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+				backoffs.remove(task.resourceName);
+				return;
+			} catch (TimeoutException e) {
+				if(task.started == 0 && task.future.cancel(false)){
+					running.remove(task.resourceName);
+					LOGGER.warn("{} is not started in {} ms,recover it next pass.", task.resourceName, timeoutMillis);
+					return;
+				}
+				if(task.started == 0 || task.started + timeoutMillis > System.currentTimeMillis()){
+					continue;
+				}
+				task.future.cancel(true);
+				this.fail(task.resourceName, "timeout after " + timeoutMillis + " ms", null);
+				return;
+			} catch (ExecutionException e) {
+				this.fail(task.resourceName, e.getCause().getMessage(), e.getCause());
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+	
+	private void fail(String resourceName, String message, Throwable t){
+		Backoff backoff = backoffs.get(resourceName);
+		int failures = backoff == null ? 1 : backoff.failures + 1;
+		long delay = Math.min(MIN_BACKOFF << Math.min(failures - 1, MAX_BACKOFF_SHIFT), MAX_BACKOFF);
+		backoffs.put(resourceName, new Backoff(failures, System.currentTimeMillis() + delay));
+		LOGGER.error(resourceName + " recover fail " + failures + " times,retry after " + delay + " ms," + message, t);
+	}
+	
+	public void close(){
+		executor.shutdownNow();
+	}
+	
+	public interface Recoverer {
+		
+		void recover(String resourceName) throws Exception;
+	}
+	
+	private class Task implements Callable<Object> {
+		
+		private final String resourceName;
+		
+		private final Recoverer recoverer;
+		
+		private volatile long started;
+		
+		private Future<Object> future;
+
+		Task(String resourceName, Recoverer recoverer) {
+			this.resourceName = resourceName;
+			this.recoverer = recoverer;
+		}
+
+		public Object call() throws Exception {
+			started = System.currentTimeMillis();
+			try {
+				recoverer.recover(resourceName);
+			} finally {
+				running.remove(resourceName);
+			}
+			return null;
+		}
+	}
+	
+	private static class Backoff {
+		
+		private final int failures;
+		
+		private final long time;
+
+		Backoff(int failures, long time) {
+			this.failures = failures;
+			this.time = time;
+		}
+	}
+}
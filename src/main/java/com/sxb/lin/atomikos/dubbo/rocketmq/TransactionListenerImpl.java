@@ -7,12 +7,20 @@ import org.apache.rocketmq.common.message.MessageExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
-
 public class TransactionListenerImpl implements TransactionListener {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(TransactionListenerImpl.class);
 	
+	private final WasCommittedChecker wasCommittedChecker;
+	
+	public TransactionListenerImpl() {
+		this(new WasCommittedChecker());
+	}
+	
+	public TransactionListenerImpl(WasCommittedChecker wasCommittedChecker) {
+		this.wasCommittedChecker = wasCommittedChecker;
+	}
+	
 	public LocalTransactionState executeLocalTransaction(Message msg, Object arg) {
 		return LocalTransactionState.UNKNOW;
 	}
@@ -26,8 +34,7 @@ public class TransactionListenerImpl implements TransactionListener {
 			return LocalTransactionState.ROLLBACK_MESSAGE;
 		}
 		
-		DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
-		Boolean wasCommitted = instance.wasCommitted(tmAddress, tid, uri);
+		Boolean wasCommitted = wasCommittedChecker.wasCommitted(tmAddress, tid, uri);
 		if(wasCommitted != null){
 			if(wasCommitted.booleanValue()){
 				LOGGER.info(msg.getTransactionId() + " check local transaction is commit.");
@@ -0,0 +1,228 @@
+package com.sxb.lin.atomikos.dubbo.rocketmq;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
+
+/**
+ * wasCommitted for the broker checks of half messages. concurrent checks for one tm are
+ * coalesced: while a batchWasCommitted call is in flight the next checks queue up and go
+ * together in the following call. resolved outcomes are cached,so a message checked again
+ * does not reach the tm.
+ */
+public class WasCommittedChecker {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(WasCommittedChecker.class);
+	
+	public final static int DEFAULT_CACHE_SIZE = 10000;
+	
+	public final static long DEFAULT_CACHE_TTL_MILLIS = 60000;
+	
+	public final static int DEFAULT_MAX_BATCH_SIZE = 256;
+	
+	private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+	
+	private final OutcomeCache cache;
+	
+	private final long cacheTtlMillis;
+	
+	private final int maxBatchSize;
+	
+	public WasCommittedChecker() {
+		this(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_MILLIS, DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	public WasCommittedChecker(int cacheSize, long cacheTtlMillis, int maxBatchSize) {
+		this.cache = new OutcomeCache(cacheSize);
+		this.cacheTtlMillis = cacheTtlMillis;
+		this.maxBatchSize = maxBatchSize;
+	}
+	
+	/**
+	 * null when the tm does not know the transaction or can not be reached.
+	 */
+	public Boolean wasCommitted(String tmAddress, String tid, String uri){
+		String key = tid + "," + uri;
+		Boolean wasCommitted = cache.get(key);
+		if(wasCommitted != null){
+			return wasCommitted;
+		}
+		Check check = new Check(tid, uri);
+		this.getLane(tmAddress).check(check);
+		if(check.wasCommitted != null){
+			cache.put(key, check.wasCommitted, System.currentTimeMillis() + cacheTtlMillis);
+		}
+		return check.wasCommitted;
+	}
+	
+	private Lane getLane(String tmAddress){
+		Lane lane = lanes.get(tmAddress);
+		if(lane == null){
+			Lane newLane = new Lane(tmAddress);
+			lane = lanes.putIfAbsent(tmAddress, newLane);
+			if(lane == null){
+				lane = newLane;
+			}
+		}
+		return lane;
+	}
+	
+	private static class Check {
+		
+		private final String tid;
+		
+		private final String uri;
+		
+		private Boolean wasCommitted;
+		
+		private boolean done;
+
+		Check(String tid, String uri) {
+			this.tid = tid;
+			this.uri = uri;
+		}
+	}
+	
+	/**
+	 * the checks of one tm,at most one call in flight.
+	 */
+	private class Lane {
+		
+		private final String tmAddress;
+		
+		private final LinkedList<Check> pending = new LinkedList<Check>();
+		
+		private boolean sending;
+
+		Lane(String tmAddress) {
+			this.tmAddress = tmAddress;
+		}
+		
+		void check(Check check){
+			synchronized (this) {
+				pending.add(check);
+			}
+			while(true){
+				List<Check> batch = null;
+				synchronized (this) {
+					while(!check.done && sending){
+						try {
+							this.wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							pending.remove(check);
+							return;
+						}
+					}
+					if(check.done){
+						return;
+					}
+					sending = true;
+					batch = new ArrayList<Check>(Math.min(pending.size(), maxBatchSize));
+					while(!pending.isEmpty() && batch.size() < maxBatchSize){
+						batch.add(pending.removeFirst());
+					}
+				}
+				try {
+					this.send(batch);
+				} finally {
+					synchronized (this) {
+						for(Check c : batch){
+							c.done = true;
+						}
+						sending = false;
+						this.notifyAll();
+					}
+				}
+			}
+		}
+		
+		private void send(List<Check> batch){
+			DubboTransactionManagerServiceProxy instance = DubboTransactionManagerServiceProxy.getInstance();
+			if(batch.size() == 1){
+				Check check = batch.get(0);
+				check.wasCommitted = instance.wasCommitted(tmAddress, check.tid, check.uri);
+				return;
+			}
+			String[] tids = new String[batch.size()];
+			String[] uris = new String[batch.size()];
+			for(int i = 0;i < tids.length;i++){
+				tids[i] = batch.get(i).tid;
+				uris[i] = batch.get(i).uri;
+			}
+			Boolean[] results = null;
+			try {
+				results = instance.batchWasCommitted(tmAddress, tids, uris);
+			} catch (RuntimeException e) {
+				if(!DubboTransactionManagerServiceProxy.isMethodNotFound(e)){
+					LOGGER.warn("batchWasCommitted({}) fail,{} transactions stay unknown.", tmAddress, tids.length, e);
+					return;
+				}
+				//tm of an older version
+				LOGGER.warn("batchWasCommitted({}) not found,check {} transactions one by one.", tmAddress, tids.length);
+				for(Check check : batch){
+					check.wasCommitted = instance.wasCommitted(tmAddress, check.tid, check.uri);
+				}
+				return;
+			}
+			for(int i = 0;i < results.length && i < tids.length;i++){
+				batch.get(i).wasCommitted = results[i];
+			}
+		}
+	}
+	
+	/**
+	 * lru of resolved outcomes,an entry is dropped once its ttl passed.
+	 */
+	private static class OutcomeCache {
+		
+		private final Map<String, Outcome> map;
+
+		OutcomeCache(final int size) {
+			this.map = new LinkedHashMap<String, Outcome>(16, 0.75f, true){
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Outcome> eldest) {
+					return this.size() > size;
+				}
+			};
+		}
+		
+		synchronized Boolean get(String key){
+			Outcome outcome = map.get(key);
+			if(outcome == null){
+				return null;
+			}
+			if(outcome.expires < System.currentTimeMillis()){
+				map.remove(key);
+				return null;
+			}
+			return outcome.wasCommitted;
+		}
+		
+		synchronized void put(String key, Boolean wasCommitted, long expires){
+			map.put(key, new Outcome(wasCommitted, expires));
+		}
+	}
+	
+	private static class Outcome {
+		
+		private final Boolean wasCommitted;
+		
+		private final long expires;
+
+		Outcome(Boolean wasCommitted, long expires) {
+			this.wasCommitted = wasCommitted;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.sxb.lin.atomikos.dubbo.serialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+import javax.transaction.xa.Xid;
+
+import com.alibaba.dubbo.common.serialize.ObjectInput;
+import com.alibaba.dubbo.common.serialize.support.hessian.Hessian2ObjectInput;
+import com.sxb.lin.atomikos.dubbo.service.DubboXid;
+import com.sxb.lin.atomikos.dubbo.service.StartXid;
+import com.sxb.lin.atomikos.dubbo.service.XidResult;
+
+public class XAObjectInput implements ObjectInput {
+	
+	private final DataInputStream in;
+
+	public XAObjectInput(InputStream in) {
+		this.in = new DataInputStream(in);
+	}
+
+	public boolean readBool() throws IOException {
+		return in.readBoolean();
+	}
+
+	public byte readByte() throws IOException {
+		return in.readByte();
+	}
+
+	public short readShort() throws IOException {
+		return in.readShort();
+	}
+
+	public int readInt() throws IOException {
+		return in.readInt();
+	}
+
+	public long readLong() throws IOException {
+		return in.readLong();
+	}
+
+	public float readFloat() throws IOException {
+		return in.readFloat();
+	}
+
+	public double readDouble() throws IOException {
+		return in.readDouble();
+	}
+
+	public String readUTF() throws IOException {
+		byte[] bytes = this.readBytes();
+		return bytes == null ? null : new String(bytes, XATags.CHARSET);
+	}
+
+	public byte[] readBytes() throws IOException {
+		int len = in.readInt();
+		if(len < 0){
+			return null;
+		}
+		byte[] bytes = new byte[len];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	public Object readObject() throws IOException, ClassNotFoundException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case XATags.NULL:
+			return null;
+		case XATags.STRING:
+			return this.readUTF();
+		case XATags.INTEGER:
+			return in.readInt();
+		case XATags.LONG:
+			return in.readLong();
+		case XATags.BOOLEAN:
+			return in.readBoolean();
+		case XATags.XID:
+			return this.readXid();
+		case XATags.START_XID:
+			return this.readStartXid();
+		case XATags.XID_RESULT:
+			return this.readXidResult();
+		case XATags.XID_ARRAY:
+			Xid[] xids = new Xid[in.readInt()];
+			for(int i = 0;i < xids.length;i++){
+				xids[i] = this.readXid();
+			}
+			return xids;
+		case XATags.XID_RESULT_ARRAY:
+			XidResult[] results = new XidResult[in.readInt()];
+			for(int i = 0;i < results.length;i++){
+				results[i] = this.readXidResult();
+			}
+			return results;
+		case XATags.STRING_ARRAY:
+			String[] array = new String[in.readInt()];
+			for(int i = 0;i < array.length;i++){
+				array[i] = this.readUTF();
+			}
+			return array;
+		case XATags.HESSIAN:
+			Hessian2ObjectInput hessian2ObjectInput = new Hessian2ObjectInput(new ByteArrayInputStream(this.readBytes()));
+			return hessian2ObjectInput.readObject();
+		default:
+			throw new IOException("unknown xa serialization tag " + tag + ".");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T readObject(Class<T> cls) throws IOException, ClassNotFoundException {
+		return (T) this.readObject();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T readObject(Class<T> cls, Type type) throws IOException, ClassNotFoundException {
+		return (T) this.readObject();
+	}
+	
+	private DubboXid readXid() throws IOException {
+		if(!in.readBoolean()){
+			return null;
+		}
+		int formatId = in.readInt();
+		byte[] gtrid = new byte[in.readUnsignedByte()];
+		in.readFully(gtrid);
+		byte[] bqual = new byte[in.readUnsignedByte()];
+		in.readFully(bqual);
+		return new DubboXid(formatId, gtrid, bqual);
+	}
+	
+	private StartXid readStartXid() throws IOException {
+		StartXid startXid = new StartXid();
+		startXid.setXid(this.readXid());
+		startXid.setFlags(in.readInt());
+		startXid.setStartTime(in.readLong());
+		startXid.setTimeout(in.readLong());
+		startXid.setTmAddress(this.readUTF());
+		return startXid;
+	}
+	
+	private XidResult readXidResult() throws IOException {
+		if(!in.readBoolean()){
+			return null;
+		}
+		XidResult result = new XidResult();
+		result.setSuccess(in.readBoolean());
+		result.setVote(in.readInt());
+		result.setErrorCode(in.readInt());
+		result.setErrorMessage(this.readUTF());
+		return result;
+	}
+}
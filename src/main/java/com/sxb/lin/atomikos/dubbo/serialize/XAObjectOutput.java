@@ -0,0 +1,162 @@
+package com.sxb.lin.atomikos.dubbo.serialize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.transaction.xa.Xid;
+
+import com.alibaba.dubbo.common.serialize.ObjectOutput;
+import com.alibaba.dubbo.common.serialize.support.hessian.Hessian2ObjectOutput;
+import com.sxb.lin.atomikos.dubbo.service.DubboXid;
+import com.sxb.lin.atomikos.dubbo.service.StartXid;
+import com.sxb.lin.atomikos.dubbo.service.XidResult;
+
+public class XAObjectOutput implements ObjectOutput {
+	
+	private final DataOutputStream out;
+
+	public XAObjectOutput(OutputStream out) {
+		this.out = new DataOutputStream(out);
+	}
+
+	public void writeBool(boolean v) throws IOException {
+		out.writeBoolean(v);
+	}
+
+	public void writeByte(byte v) throws IOException {
+		out.writeByte(v);
+	}
+
+	public void writeShort(short v) throws IOException {
+		out.writeShort(v);
+	}
+
+	public void writeInt(int v) throws IOException {
+		out.writeInt(v);
+	}
+
+	public void writeLong(long v) throws IOException {
+		out.writeLong(v);
+	}
+
+	public void writeFloat(float v) throws IOException {
+		out.writeFloat(v);
+	}
+
+	public void writeDouble(double v) throws IOException {
+		out.writeDouble(v);
+	}
+
+	public void writeUTF(String v) throws IOException {
+		this.writeBytes(v == null ? null : v.getBytes(XATags.CHARSET));
+	}
+
+	public void writeBytes(byte[] v) throws IOException {
+		if(v == null){
+			out.writeInt(-1);
+		}else{
+			this.writeBytes(v, 0, v.length);
+		}
+	}
+
+	public void writeBytes(byte[] v, int off, int len) throws IOException {
+		out.writeInt(len);
+		out.write(v, off, len);
+	}
+
+	public void flushBuffer() throws IOException {
+		out.flush();
+	}
+
+	public void writeObject(Object obj) throws IOException {
+		if(obj == null){
+			out.writeByte(XATags.NULL);
+		}else if(obj instanceof String){
+			out.writeByte(XATags.STRING);
+			this.writeUTF((String) obj);
+		}else if(obj instanceof Integer){
+			out.writeByte(XATags.INTEGER);
+			out.writeInt((Integer) obj);
+		}else if(obj instanceof Long){
+			out.writeByte(XATags.LONG);
+			out.writeLong((Long) obj);
+		}else if(obj instanceof Boolean){
+			out.writeByte(XATags.BOOLEAN);
+			out.writeBoolean((Boolean) obj);
+		}else if(obj instanceof Xid){
+			out.writeByte(XATags.XID);
+			this.writeXid((Xid) obj);
+		}else if(obj.getClass() == StartXid.class){
+			out.writeByte(XATags.START_XID);
+			this.writeStartXid((StartXid) obj);
+		}else if(obj.getClass() == XidResult.class){
+			out.writeByte(XATags.XID_RESULT);
+			this.writeXidResult((XidResult) obj);
+		}else if(obj instanceof Xid[]){
+			Xid[] xids = (Xid[]) obj;
+			out.writeByte(XATags.XID_ARRAY);
+			out.writeInt(xids.length);
+			for(Xid xid : xids){
+				this.writeXid(xid);
+			}
+		}else if(obj instanceof XidResult[]){
+			XidResult[] results = (XidResult[]) obj;
+			out.writeByte(XATags.XID_RESULT_ARRAY);
+			out.writeInt(results.length);
+			for(XidResult result : results){
+				this.writeXidResult(result);
+			}
+		}else if(obj instanceof String[]){
+			String[] array = (String[]) obj;
+			out.writeByte(XATags.STRING_ARRAY);
+			out.writeInt(array.length);
+			for(String str : array){
+				this.writeUTF(str);
+			}
+		}else{
+			out.writeByte(XATags.HESSIAN);
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			Hessian2ObjectOutput hessian2ObjectOutput = new Hessian2ObjectOutput(bos);
+			hessian2ObjectOutput.writeObject(obj);
+			hessian2ObjectOutput.flushBuffer();
+			this.writeBytes(bos.toByteArray());
+		}
+	}
+	
+	private void writeXid(Xid xid) throws IOException {
+		if(xid == null){
+			out.writeBoolean(false);
+			return;
+		}
+		out.writeBoolean(true);
+		out.writeInt(xid.getFormatId());
+		byte[] gtrid = DubboXid.globalTransactionIdOf(xid);
+		out.writeByte(gtrid.length);
+		out.write(gtrid);
+		byte[] bqual = DubboXid.branchQualifierOf(xid);
+		out.writeByte(bqual.length);
+		out.write(bqual);
+	}
+	
+	private void writeStartXid(StartXid startXid) throws IOException {
+		this.writeXid(startXid.getXid());
+		out.writeInt(startXid.getFlags());
+		out.writeLong(startXid.getStartTime());
+		out.writeLong(startXid.getTimeout());
+		this.writeUTF(startXid.getTmAddress());
+	}
+	
+	private void writeXidResult(XidResult result) throws IOException {
+		if(result == null){
+			out.writeBoolean(false);
+			return;
+		}
+		out.writeBoolean(true);
+		out.writeBoolean(result.isSuccess());
+		out.writeInt(result.getVote());
+		out.writeInt(result.getErrorCode());
+		this.writeUTF(result.getErrorMessage());
+	}
+}
@@ -0,0 +1,38 @@
+package com.sxb.lin.atomikos.dubbo.serialize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.serialize.ObjectInput;
+import com.alibaba.dubbo.common.serialize.ObjectOutput;
+import com.alibaba.dubbo.common.serialize.Serialization;
+
+/**
+ * Fixed binary layouts for the values exchanged by DubboTransactionManagerService,
+ * any other object is written with hessian2.
+ */
+public class XASerialization implements Serialization {
+	
+	public final static String NAME = "xa";
+	
+	public final static byte ID = 21;
+
+	public byte getContentTypeId() {
+		return ID;
+	}
+
+	public String getContentType() {
+		return "x-application/xa";
+	}
+
+	public ObjectOutput serialize(URL url, OutputStream output) throws IOException {
+		return new XAObjectOutput(output);
+	}
+
+	public ObjectInput deserialize(URL url, InputStream input) throws IOException {
+		return new XAObjectInput(input);
+	}
+
+}
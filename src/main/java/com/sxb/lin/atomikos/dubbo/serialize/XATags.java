@@ -0,0 +1,36 @@
+package com.sxb.lin.atomikos.dubbo.serialize;
+
+import java.nio.charset.Charset;
+
+class XATags {
+	
+	final static Charset CHARSET = Charset.forName("UTF-8");
+
+	final static byte NULL = 0;
+	
+	final static byte STRING = 1;
+	
+	final static byte INTEGER = 2;
+	
+	final static byte LONG = 3;
+	
+	final static byte BOOLEAN = 4;
+	
+	final static byte XID = 5;
+	
+	final static byte START_XID = 6;
+	
+	final static byte XID_RESULT = 7;
+	
+	final static byte XID_ARRAY = 8;
+	
+	final static byte XID_RESULT_ARRAY = 9;
+	
+	final static byte STRING_ARRAY = 10;
+	
+	final static byte HESSIAN = 127;
+	
+	private XATags() {
+		
+	}
+}
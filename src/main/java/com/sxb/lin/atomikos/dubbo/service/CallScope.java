@@ -0,0 +1,134 @@
+package com.sxb.lin.atomikos.dubbo.service;
+
+import java.util.concurrent.Future;
+
+import javax.transaction.xa.Xid;
+
+import com.alibaba.dubbo.remoting.exchange.ResponseCallback;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.protocol.dubbo.FutureAdapter;
+import com.sxb.lin.atomikos.dubbo.jfr.XAEventType;
+import com.sxb.lin.atomikos.dubbo.jfr.XAFlightEvent;
+import com.sxb.lin.atomikos.dubbo.jfr.XAFlightRecorder;
+import com.sxb.lin.atomikos.dubbo.metrics.XAMetrics;
+import com.sxb.lin.atomikos.dubbo.metrics.XAOperation;
+import com.sxb.lin.atomikos.dubbo.trace.Span;
+import com.sxb.lin.atomikos.dubbo.trace.TraceContext;
+import com.sxb.lin.atomikos.dubbo.trace.XATracer;
+
+/**
+ * the metrics,flight event and span of one call made by DubboTransactionManagerServiceProxy,
+ * the tid is taken from the xid only when an event or a span needs it.
+ */
+class CallScope {
+
+	private final XAMetrics metrics;
+
+	private final XAOperation operation;
+
+	private final Xid xid;
+
+	private final String uniqueResourceName;
+
+	private final String remoteAddress;
+
+	private final long start;
+
+	private String tid;
+
+	private XAFlightEvent event;
+
+	private Span span;
+
+	private TraceContext parent;
+
+	private CallScope(XAMetrics metrics, XAOperation operation, String tid, Xid xid,
+			String uniqueResourceName, String remoteAddress) {
+		this.metrics = metrics;
+		this.operation = operation;
+		this.tid = tid;
+		this.xid = xid;
+		this.uniqueResourceName = uniqueResourceName;
+		this.remoteAddress = remoteAddress;
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * only times the call for the metrics.
+	 */
+	static CallScope begin(XAMetrics metrics, XAOperation operation, String remoteAddress){
+		return new CallScope(metrics, operation, null, null, null, remoteAddress);
+	}
+
+	/**
+	 * also begins the flight event and a span bound to the thread and attached to the rpc,
+	 * tid may be null when xid is given.
+	 */
+	static CallScope begin(XAMetrics metrics, XAOperation operation, XAEventType eventType, String spanName,
+			String tid, Xid xid, String uniqueResourceName, String remoteAddress){
+		CallScope scope = new CallScope(metrics, operation, tid, xid, uniqueResourceName, remoteAddress);
+		scope.event = XAFlightRecorder.begin(eventType);
+		if(XATracer.isEnabled()){
+			scope.span = XATracer.startSpan(spanName, XATracer.current(), scope.getTid(), uniqueResourceName, remoteAddress);
+			scope.parent = XATracer.inject(scope.span);
+		}
+		return scope;
+	}
+
+	private String getTid(){
+		if(tid == null && xid != null){
+			tid = DubboXid.tidOf(xid);
+		}
+		return tid;
+	}
+
+	/**
+	 * unbinds the span once the rpc is sent.
+	 */
+	void detach(){
+		XATracer.restoreInjected(span, parent);
+	}
+
+	void end(boolean success){
+		this.end(success, "ok");
+	}
+
+	/**
+	 * result is recorded on success,fail otherwise.
+	 */
+	void end(boolean success, String result){
+		this.detach();
+		this.finish(success, success ? result : "fail");
+	}
+
+	/**
+	 * times an async call until its response,the dubbo protocol gives the response future
+	 * in RpcContext. other protocols are timed until the call returned.
+	 */
+	void endAsync(Future<?> future){
+		this.detach();
+		if(!(future instanceof FutureAdapter)){
+			this.finish(future != null, future != null ? "sent" : "fail");
+			return;
+		}
+		((FutureAdapter<?>) future).getFuture().setCallback(new ResponseCallback() {
+			public void done(Object response) {
+				boolean success = !(response instanceof Result) || !((Result) response).hasException();
+				finish(success, success ? "ok" : "fail");
+			}
+			public void caught(Throwable exception) {
+				finish(false, "fail");
+			}
+		});
+	}
+
+	private void finish(boolean success, String result){
+		if(span != null){
+			span.finish(result);
+		}
+		metrics.recordCall(remoteAddress, operation, System.nanoTime() - start, success);
+		if(event != null){
+			event.commit(this.getTid(), xid, uniqueResourceName, remoteAddress, result);
+		}
+	}
+}
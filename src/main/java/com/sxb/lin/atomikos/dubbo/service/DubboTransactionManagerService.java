@@ -12,15 +12,36 @@ public interface DubboTransactionManagerService {
 	StartXid enlistResource(String remoteAddress,String uniqueResourceName,String tid,
 			String localAddress) throws SystemException, RollbackException;
 	
+	StartXid enlistResource(String remoteAddress,String uniqueResourceName,String tid,
+			String localAddress,Xid xid) throws SystemException, RollbackException;
+	
 	int prepare(String remoteAddress, String uniqueResourceName, Xid xid) throws XAException;
 	
 	void commit(String remoteAddress, String uniqueResourceName, Xid xid, boolean onePhase) throws XAException;
 	
 	void rollback(String remoteAddress, String uniqueResourceName, Xid xid) throws XAException;
-	
+
+	XidResult[] batchPrepare(String remoteAddress, String[] uniqueResourceNames, Xid[] xids) throws XAException;
+
+	XidResult[] batchCommit(String remoteAddress, String[] uniqueResourceNames, Xid[] xids) throws XAException;
+
+	XidResult[] batchRollback(String remoteAddress, String[] uniqueResourceNames, Xid[] xids) throws XAException;
+
 	Xid[] recover(String remoteAddress, String uniqueResourceName, int flag) throws XAException;
 	
+	/**
+	 * one page of a recover scan,the scan starts when the cursor is null and only keeps the xids
+	 * of the format id (any when negative) whose tid starts with the prefix (any when null).
+	 */
+	RecoverPage recover(String remoteAddress, String uniqueResourceName, int formatId, 
+			String tidPrefix, String cursor, int pageSize) throws XAException;
+	
 	long ping(String remoteAddress);
 	
 	Boolean wasCommitted(String remoteAddress, String tid, String uri);
+	
+	/**
+	 * wasCommitted of every (tids[i], uris[i]) pair in one call,each tid is read once.
+	 */
+	Boolean[] batchWasCommitted(String remoteAddress, String[] tids, String[] uris);
 }
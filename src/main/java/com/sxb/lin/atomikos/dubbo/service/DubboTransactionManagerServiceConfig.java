@@ -8,7 +8,11 @@ import com.alibaba.dubbo.config.ConsumerConfig;
 import com.alibaba.dubbo.config.ProtocolConfig;
 import com.alibaba.dubbo.config.ProviderConfig;
 import com.alibaba.dubbo.config.RegistryConfig;
+import com.sxb.lin.atomikos.dubbo.metrics.XAMetrics;
+import com.sxb.lin.atomikos.dubbo.pool.XAResourcePool;
 import com.sxb.lin.atomikos.dubbo.pool.recover.UniqueResource;
+import com.sxb.lin.atomikos.dubbo.recovery.RecoveryWorkers;
+import com.sxb.lin.atomikos.dubbo.trace.SpanExporter;
 
 public class DubboTransactionManagerServiceConfig {
 
@@ -29,6 +33,34 @@ public class DubboTransactionManagerServiceConfig {
 	private String serviceDispatcher;
 	
 	private String serviceLoadbalance;
+	
+	private String serviceSerialization;
+	
+	private boolean asyncEnlistResource;
+	
+	private boolean asyncCommit;
+	
+	private int asyncCommitThreads = 4;
+	
+	private int asyncCommitQueueSize = 1024;
+	
+	private int maxPrepareFanOut = 8;
+	
+	private boolean readOnlyBranch;
+	
+	private long expiryTickMillis = XAResourcePool.DEFAULT_EXPIRY_TICK_MILLIS;
+	
+	private XAMetrics metrics;
+	
+	private SpanExporter spanExporter;
+	
+	private boolean exportDiagnosticsService;
+	
+	private int recoveryThreads = RecoveryWorkers.DEFAULT_THREADS;
+	
+	private long recoveryTimeoutMillis = RecoveryWorkers.DEFAULT_TIMEOUT_MILLIS;
+	
+	private boolean compactXidSerialization;
 
 	public ApplicationConfig getApplicationConfig() {
 		return applicationConfig;
@@ -102,5 +134,141 @@ public class DubboTransactionManagerServiceConfig {
 	public void setServiceLoadbalance(String serviceLoadbalance) {
 		this.serviceLoadbalance = serviceLoadbalance;
 	}
-	
+
+	public String getServiceSerialization() {
+		return serviceSerialization;
+	}
+
+	public void setServiceSerialization(String serviceSerialization) {
+		this.serviceSerialization = serviceSerialization;
+	}
+
+	public boolean isAsyncEnlistResource() {
+		return asyncEnlistResource;
+	}
+
+	public void setAsyncEnlistResource(boolean asyncEnlistResource) {
+		this.asyncEnlistResource = asyncEnlistResource;
+	}
+
+	public boolean isAsyncCommit() {
+		return asyncCommit;
+	}
+
+	/**
+	 * phase two of remote branches returns once the commit record is forced,the commit runs
+	 * in the background. heuristic outcomes of those commits are no longer surfaced to atomikos,
+	 * they are only logged and kept in dubbo-async-commit-heuristic.log.
+	 */
+	public void setAsyncCommit(boolean asyncCommit) {
+		this.asyncCommit = asyncCommit;
+	}
+
+	public int getAsyncCommitThreads() {
+		return asyncCommitThreads;
+	}
+
+	public void setAsyncCommitThreads(int asyncCommitThreads) {
+		this.asyncCommitThreads = asyncCommitThreads;
+	}
+
+	public int getAsyncCommitQueueSize() {
+		return asyncCommitQueueSize;
+	}
+
+	public void setAsyncCommitQueueSize(int asyncCommitQueueSize) {
+		this.asyncCommitQueueSize = asyncCommitQueueSize;
+	}
+
+	public int getMaxPrepareFanOut() {
+		return maxPrepareFanOut;
+	}
+
+	public void setMaxPrepareFanOut(int maxPrepareFanOut) {
+		this.maxPrepareFanOut = maxPrepareFanOut;
+	}
+
+	public boolean isReadOnlyBranch() {
+		return readOnlyBranch;
+	}
+
+	/**
+	 * a branch that only ran queries votes XA_RDONLY and is committed at prepare. select ... into,
+	 * nextval and setval count as writes,but a select calling a user function with side effects
+	 * is still taken as read-only,do not enable it for such statements. unwrap on the connection
+	 * or a statement counts as a write,getConnection of statements and metadata stays tracked.
+	 * a statement reached through ResultSet.getStatement is not tracked.
+	 */
+	public void setReadOnlyBranch(boolean readOnlyBranch) {
+		this.readOnlyBranch = readOnlyBranch;
+	}
+
+	public long getExpiryTickMillis() {
+		return expiryTickMillis;
+	}
+
+	public void setExpiryTickMillis(long expiryTickMillis) {
+		this.expiryTickMillis = expiryTickMillis;
+	}
+
+	public XAMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(XAMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public SpanExporter getSpanExporter() {
+		return spanExporter;
+	}
+
+	public void setSpanExporter(SpanExporter spanExporter) {
+		this.spanExporter = spanExporter;
+	}
+
+	public boolean isExportDiagnosticsService() {
+		return exportDiagnosticsService;
+	}
+
+	/**
+	 * export the read-only DubboXADiagnosticsService on the same protocol,default false.
+	 */
+	public void setExportDiagnosticsService(boolean exportDiagnosticsService) {
+		this.exportDiagnosticsService = exportDiagnosticsService;
+	}
+
+	public int getRecoveryThreads() {
+		return recoveryThreads;
+	}
+
+	/**
+	 * resources recovered in parallel by a recovery pass,default 4.
+	 */
+	public void setRecoveryThreads(int recoveryThreads) {
+		this.recoveryThreads = recoveryThreads;
+	}
+
+	public long getRecoveryTimeoutMillis() {
+		return recoveryTimeoutMillis;
+	}
+
+	/**
+	 * a pass gives up a resource recovering longer,the resource is backed off.
+	 */
+	public void setRecoveryTimeoutMillis(long recoveryTimeoutMillis) {
+		this.recoveryTimeoutMillis = recoveryTimeoutMillis;
+	}
+
+	public boolean isCompactXidSerialization() {
+		return compactXidSerialization;
+	}
+
+	/**
+	 * hessian writes a xid as one binary field instead of the bean fields,default false.
+	 * nodes older than this release can not read it,enable it after the whole cluster is upgraded.
+	 */
+	public void setCompactXidSerialization(boolean compactXidSerialization) {
+		this.compactXidSerialization = compactXidSerialization;
+	}
 }
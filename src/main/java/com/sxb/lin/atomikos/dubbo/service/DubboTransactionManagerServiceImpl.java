@@ -1,12 +1,21 @@
 package com.sxb.lin.atomikos.dubbo.service;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.RollbackException;
 import javax.transaction.Status;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
 import org.slf4j.Logger;
@@ -14,10 +23,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 
+import com.alibaba.dubbo.rpc.RpcContext;
 import com.atomikos.datasource.TransactionalResource;
 import com.atomikos.datasource.xa.XAResourceTransaction;
 import com.atomikos.icatch.CompositeTransaction;
 import com.atomikos.icatch.CompositeTransactionManager;
+import com.atomikos.icatch.Synchronization;
 import com.atomikos.icatch.config.Configuration;
 import com.atomikos.icatch.jta.TransactionManagerImp;
 import com.atomikos.recovery.CoordinatorLogEntry;
@@ -27,14 +38,28 @@ import com.atomikos.recovery.RecoveryLog;
 import com.atomikos.recovery.Repository;
 import com.atomikos.recovery.TxState;
 import com.atomikos.recovery.imp.RecoveryLogImp;
+import com.sxb.lin.atomikos.dubbo.DubboXAResourceGroup;
 import com.sxb.lin.atomikos.dubbo.DubboXAResourceImpl;
 import com.sxb.lin.atomikos.dubbo.DubboXATransactionalResource;
+import com.sxb.lin.atomikos.dubbo.LogRateLimiter;
 import com.sxb.lin.atomikos.dubbo.pool.XAResourcePool;
+import com.sxb.lin.atomikos.dubbo.pool.XidFilter;
+import com.sxb.lin.atomikos.dubbo.recovery.IndexedRepository;
+import com.sxb.lin.atomikos.dubbo.trace.Span;
+import com.sxb.lin.atomikos.dubbo.trace.XATracer;
 
 public class DubboTransactionManagerServiceImpl implements DubboTransactionManagerService{
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(DubboTransactionManagerServiceImpl.class);
 	
+	private final static long PING_LOG_INTERVAL = 60000;
+	
+	private final static int MAX_RECOVER_PAGE_SIZE = 1000;
+	
+	private final static long RECOVER_SCAN_TIMEOUT = 60000;
+	
+	private final LogRateLimiter pingLogLimiter = new LogRateLimiter(PING_LOG_INTERVAL);
+	
 	private XAResourcePool xaResourcePool;
 	
 	private DubboXATransactionalResource dubboXATransactionalResource;
@@ -42,6 +67,17 @@ public class DubboTransactionManagerServiceImpl implements DubboTransactionManag
 	private String localAddress;
 	
 	private Repository repository;
+	
+	private volatile IndexedRepository indexedRepository;
+	
+	private volatile RecoveryLog indexedRecoveryLog;
+	
+	private final AtomicLong recoverScanCounter = new AtomicLong();
+	
+	private final ConcurrentMap<String, RecoverScan> recoverScans = new ConcurrentHashMap<String, RecoverScan>();
+	
+	private ConcurrentMap<String, ConcurrentMap<String, DubboXAResourceGroup>> resourceGroups = 
+			new ConcurrentHashMap<String, ConcurrentMap<String, DubboXAResourceGroup>>();
 		
 	DubboTransactionManagerServiceImpl(XAResourcePool xaResourcePool,
 			DubboXATransactionalResource dubboXATransactionalResource){
@@ -54,14 +90,7 @@ public class DubboTransactionManagerServiceImpl implements DubboTransactionManag
 			int lenth = xids.length;
 			DubboXid[] dubboXids = new DubboXid[lenth];
 			for(int i = 0;i < lenth;i++){
-				Xid xid = xids[i];
-				DubboXid dubboXid = new DubboXid();
-				dubboXid.setFormatId(xid.getFormatId());
-				dubboXid.setBranchQualifier(xid.getBranchQualifier());
-				dubboXid.setGlobalTransactionId(xid.getGlobalTransactionId());
-				dubboXid.setBranchQualifierStr(new String(xid.getBranchQualifier()));
-				dubboXid.setGlobalTransactionIdStr(new String(xid.getGlobalTransactionId()));
-				dubboXids[i] = dubboXid;
+				dubboXids[i] = DubboXid.valueOf(xids[i]);
 			}
 			return dubboXids;
 		}
@@ -70,6 +99,15 @@ public class DubboTransactionManagerServiceImpl implements DubboTransactionManag
 
 	public StartXid enlistResource(String remoteAddress, String uniqueResourceName, String tid, 
 			String localAddress) throws SystemException, RollbackException {
+		return this.enlistResource(remoteAddress, uniqueResourceName, tid, localAddress, null);
+	}
+	
+	public StartXid enlistResource(String remoteAddress, String uniqueResourceName, String tid, 
+			String localAddress, Xid xid) throws SystemException, RollbackException {
+		
+		if(xid != null && !tid.equals(new String(xid.getGlobalTransactionId()))){
+			throw new SystemException("xid " + xid + " is not belong to transaction " + tid + ".");
+		}
 		
 		TransactionManagerImp transactionManager = (TransactionManagerImp) TransactionManagerImp.getTransactionManager();
 		Transaction transaction = transactionManager.getTransaction(tid);
@@ -96,9 +134,16 @@ public class DubboTransactionManagerServiceImpl implements DubboTransactionManag
 
 		long startTime = System.currentTimeMillis();
 		long timeout = compositeTransaction.getTimeout() + DubboTransactionManagerService.ADD_TIME;
-		TransactionalResource res = dubboXATransactionalResource.findOrCreateTransactionalResource(uniqueResourceName,startTime + timeout);
+		xaResource.setSpan(XATracer.startSpan("branch", XATracer.extract(), tid, uniqueResourceName, localAddress));
+		TransactionalResource res = null;
+		if(xid == null){
+			res = dubboXATransactionalResource.findOrCreateTransactionalResource(uniqueResourceName,startTime + timeout);
+		}else{
+			res = dubboXATransactionalResource.createTransactionalResource(uniqueResourceName,startTime + timeout,xid);
+		}
 		XAResourceTransaction restx = (XAResourceTransaction) res.getResourceTransaction(compositeTransaction);
 		restx.setXAResource(xaResource);
+		this.findOrCreateResourceGroup(compositeTransaction, localAddress).add(xaResource);
 		restx.resume();
 
 		StartXid startXid = xaResource.getStartXid();
@@ -111,43 +156,192 @@ public class DubboTransactionManagerServiceImpl implements DubboTransactionManag
 		return startXid;
 	}
 
+	private DubboXAResourceGroup findOrCreateResourceGroup(CompositeTransaction compositeTransaction, String address){
+		String tid = compositeTransaction.getTid();
+		ConcurrentMap<String, DubboXAResourceGroup> groups = resourceGroups.get(tid);
+		if(groups == null){
+			ConcurrentMap<String, DubboXAResourceGroup> newGroups = new ConcurrentHashMap<String, DubboXAResourceGroup>();
+			groups = resourceGroups.putIfAbsent(tid, newGroups);
+			if(groups == null){
+				groups = newGroups;
+				compositeTransaction.registerSynchronization(new ResourceGroupSynchronization(resourceGroups, tid));
+			}
+		}
+		DubboXAResourceGroup group = groups.get(address);
+		if(group == null){
+			DubboXAResourceGroup newGroup = new DubboXAResourceGroup(tid, address, groups);
+			group = groups.putIfAbsent(address, newGroup);
+			if(group == null){
+				group = newGroup;
+			}
+		}
+		return group;
+	}
+
 	public int prepare(String remoteAddress, String uniqueResourceName, Xid xid) throws XAException {
 		if(StringUtils.hasLength(remoteAddress) && remoteAddress.equals(localAddress)){
-			return xaResourcePool.prepare(xid);
+			Span span = this.startSpan("serve prepare", uniqueResourceName, xid);
+			boolean success = false;
+			int prepare = -1;
+			try {
+				prepare = xaResourcePool.prepare(xid);
+				success = true;
+				return prepare;
+			} finally {
+				this.finishSpan(span, success ? String.valueOf(prepare) : "fail");
+			}
 		}else{
 			throw new XAException("remoteAddress " + remoteAddress + " is error,can not prepare.");
 		}
 	}
 
 	public void commit(String remoteAddress, String uniqueResourceName, Xid xid, boolean onePhase) throws XAException {
-		if(remoteAddress == null){
-			xaResourcePool.commit(xid, onePhase, uniqueResourceName);
-		} else if(StringUtils.hasLength(remoteAddress) && remoteAddress.equals(localAddress)){
-			xaResourcePool.commit(xid, onePhase, uniqueResourceName);
-		} else {
+		if(remoteAddress != null && (!StringUtils.hasLength(remoteAddress) || !remoteAddress.equals(localAddress))){
 			throw new XAException("remoteAddress " + remoteAddress + " is error,can not commit.");
 		}
+		Span span = this.startSpan("serve commit", uniqueResourceName, xid);
+		boolean success = false;
+		try {
+			xaResourcePool.commit(xid, onePhase, uniqueResourceName);
+			success = true;
+		} finally {
+			this.finishSpan(span, success ? "ok" : "fail");
+		}
 	}
 
 	public void rollback(String remoteAddress, String uniqueResourceName, Xid xid) throws XAException {
-		if(remoteAddress == null){
-			xaResourcePool.rollback(xid, uniqueResourceName);
-		} else if(StringUtils.hasLength(remoteAddress) && remoteAddress.equals(localAddress)){
+		if(remoteAddress != null && (!StringUtils.hasLength(remoteAddress) || !remoteAddress.equals(localAddress))){
+			throw new XAException("remoteAddress " + remoteAddress + " is error,can not rollback.");
+		}
+		Span span = this.startSpan("serve rollback", uniqueResourceName, xid);
+		boolean success = false;
+		try {
 			xaResourcePool.rollback(xid, uniqueResourceName);
-		} else {
+			success = true;
+		} finally {
+			this.finishSpan(span, success ? "ok" : "fail");
+		}
+	}
+
+	public XidResult[] batchPrepare(String remoteAddress, String[] uniqueResourceNames, Xid[] xids) throws XAException {
+		if(!StringUtils.hasLength(remoteAddress) || !remoteAddress.equals(localAddress)){
+			throw new XAException("remoteAddress " + remoteAddress + " is error,can not prepare.");
+		}
+		Span span = this.startSpan("serve batch prepare", StringUtils.arrayToCommaDelimitedString(uniqueResourceNames), 
+				xids.length > 0 ? xids[0] : null);
+		XidResult[] results = new XidResult[xids.length];
+		for(int i = 0;i < xids.length;i++){
+			try {
+				results[i] = XidResult.success(xaResourcePool.prepare(xids[i]));
+			} catch (XAException e) {
+				results[i] = XidResult.failure(e);
+			}
+		}
+		this.finishSpan(span, results);
+		return results;
+	}
+
+	public XidResult[] batchCommit(String remoteAddress, String[] uniqueResourceNames, Xid[] xids) throws XAException {
+		if(!StringUtils.hasLength(remoteAddress) || !remoteAddress.equals(localAddress)){
+			throw new XAException("remoteAddress " + remoteAddress + " is error,can not commit.");
+		}
+		Span span = this.startSpan("serve batch commit", StringUtils.arrayToCommaDelimitedString(uniqueResourceNames), 
+				xids.length > 0 ? xids[0] : null);
+		XidResult[] results = new XidResult[xids.length];
+		for(int i = 0;i < xids.length;i++){
+			try {
+				xaResourcePool.commit(xids[i], false, uniqueResourceNames[i]);
+				results[i] = XidResult.success(XAResource.XA_OK);
+			} catch (XAException e) {
+				results[i] = XidResult.failure(e);
+			}
+		}
+		this.finishSpan(span, results);
+		return results;
+	}
+
+	public XidResult[] batchRollback(String remoteAddress, String[] uniqueResourceNames, Xid[] xids) throws XAException {
+		if(!StringUtils.hasLength(remoteAddress) || !remoteAddress.equals(localAddress)){
 			throw new XAException("remoteAddress " + remoteAddress + " is error,can not rollback.");
 		}
+		Span span = this.startSpan("serve batch rollback", StringUtils.arrayToCommaDelimitedString(uniqueResourceNames), 
+				xids.length > 0 ? xids[0] : null);
+		XidResult[] results = new XidResult[xids.length];
+		for(int i = 0;i < xids.length;i++){
+			try {
+				xaResourcePool.rollback(xids[i], uniqueResourceNames[i]);
+				results[i] = XidResult.success(XAResource.XA_OK);
+			} catch (XAException e) {
+				results[i] = XidResult.failure(e);
+			}
+		}
+		this.finishSpan(span, results);
+		return results;
 	}
 
 	public Xid[] recover(String remoteAddress, String uniqueResourceName, int flag) throws XAException {
 		Xid[] xids = xaResourcePool.recover(flag, uniqueResourceName);
 		return this.converXids(xids);
 	}
+	
+	/**
+	 * the resource is scanned once when the cursor is null,the filtered xids are kept
+	 * until the last page is read or the scan is idle too long.
+	 */
+	public RecoverPage recover(String remoteAddress, String uniqueResourceName, int formatId, 
+			String tidPrefix, String cursor, int pageSize) throws XAException {
+		int size = Math.max(1, Math.min(pageSize, MAX_RECOVER_PAGE_SIZE));
+		RecoverScan scan = null;
+		if(cursor == null){
+			this.expireRecoverScans();
+			Xid[] xids = xaResourcePool.recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN, 
+					uniqueResourceName, new XidFilter(formatId, tidPrefix));
+			scan = new RecoverScan(xids == null ? new ArrayList<Xid>() : Arrays.asList(xids));
+			if(scan.xids.size() > size){
+				cursor = localAddress + "-" + recoverScanCounter.incrementAndGet();
+				recoverScans.put(cursor, scan);
+			}
+		}else{
+			scan = recoverScans.get(cursor);
+			if(scan == null){
+				XAException e = new XAException("recover cursor " + cursor + " is not exist or expired.");
+				e.errorCode = XAException.XAER_INVAL;
+				throw e;
+			}
+		}
+		Xid[] page = null;
+		boolean last = false;
+		synchronized (scan) {
+			int end = Math.min(scan.position + size, scan.xids.size());
+			page = scan.xids.subList(scan.position, end).toArray(new Xid[end - scan.position]);
+			scan.position = end;
+			scan.time = System.currentTimeMillis();
+			last = end == scan.xids.size();
+		}
+		if(last && cursor != null){
+			recoverScans.remove(cursor);
+			cursor = null;
+		}
+		return new RecoverPage(this.converXids(page), cursor);
+	}
+	
+	private void expireRecoverScans(){
+		long time = System.currentTimeMillis() - RECOVER_SCAN_TIMEOUT;
+		for(Map.Entry<String, RecoverScan> entry : recoverScans.entrySet()){
+			if(entry.getValue().time < time){
+				recoverScans.remove(entry.getKey());
+			}
+		}
+	}
 
 	public long ping(String remoteAddress) {
 		if(StringUtils.hasLength(remoteAddress) && remoteAddress.equals(localAddress)){
 			long currentTimeMillis = System.currentTimeMillis();
-			LOGGER.warn("ping("+remoteAddress+") return "+currentTimeMillis);
+			if(pingLogLimiter.acquire()){
+				LOGGER.warn("ping({}) return {},{} pings not logged.", remoteAddress, currentTimeMillis, pingLogLimiter.drainSuppressed());
+			}else{
+				LOGGER.debug("ping({}) return {}", remoteAddress, currentTimeMillis);
+			}
 			return currentTimeMillis;
 		} else {
 			return -1;
@@ -156,26 +350,101 @@ public class DubboTransactionManagerServiceImpl implements DubboTransactionManag
 
 	public Boolean wasCommitted(String remoteAddress, String tid, String uri) {
 		try {
-			if(this.getRepository() != null){
-				CoordinatorLogEntry coordinatorLogEntry = this.getRepository().get(tid);
-				if(coordinatorLogEntry != null){
-					if(coordinatorLogEntry.wasCommitted){
-						for(ParticipantLogEntry entry : coordinatorLogEntry.participants){
-							if(entry.coordinatorId.equals(tid) && entry.uri.equals(uri) && entry.state == TxState.COMMITTING){
-								ParticipantLogEntry terminatedEntry = new ParticipantLogEntry(
-										entry.coordinatorId,entry.uri,entry.expires,entry.resourceName,TxState.TERMINATED);
-								this.getRecoveryLog().terminated(terminatedEntry);
-							}
-						}
-					}
-					return coordinatorLogEntry.wasCommitted;
-				}
-			}
+			return this.wasCommitted(this.getCoordinatorLogEntry(tid), tid, uri);
 		} catch (LogReadException e) {
 			LOGGER.error(e.getMessage(), e);
 		}
 		return null;
 	}
+	
+	public Boolean[] batchWasCommitted(String remoteAddress, String[] tids, String[] uris) {
+		Boolean[] results = new Boolean[tids.length];
+		if(this.getIndexedRepository() == null && this.getRepository() == null){
+			return results;
+		}
+		Map<String, CoordinatorLogEntry> entries = new HashMap<String, CoordinatorLogEntry>();
+		for(int i = 0;i < tids.length;i++){
+			try {
+				CoordinatorLogEntry coordinatorLogEntry = entries.get(tids[i]);
+				if(coordinatorLogEntry == null && !entries.containsKey(tids[i])){
+					coordinatorLogEntry = this.getCoordinatorLogEntry(tids[i]);
+					entries.put(tids[i], coordinatorLogEntry);
+				}
+				results[i] = this.wasCommitted(coordinatorLogEntry, tids[i], uris[i]);
+			} catch (LogReadException e) {
+				LOGGER.error(e.getMessage(), e);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * read from the outcome index,from the atomikos repository when the index is not installed.
+	 */
+	private CoordinatorLogEntry getCoordinatorLogEntry(String tid) throws LogReadException {
+		IndexedRepository indexedRepository = this.getIndexedRepository();
+		if(indexedRepository != null){
+			return indexedRepository.getCoordinatorLogEntry(tid);
+		}
+		Repository repository = this.getRepository();
+		return repository == null ? null : repository.get(tid);
+	}
+	
+	/**
+	 * null when the tm has no log of the transaction,the committing participant of the uri
+	 * is terminated once the outcome was read.
+	 */
+	private Boolean wasCommitted(CoordinatorLogEntry coordinatorLogEntry, String tid, String uri){
+		if(coordinatorLogEntry == null){
+			return null;
+		}
+		if(coordinatorLogEntry.wasCommitted){
+			for(ParticipantLogEntry entry : coordinatorLogEntry.participants){
+				if(entry.coordinatorId.equals(tid) && entry.uri.equals(uri) && entry.state == TxState.COMMITTING){
+					ParticipantLogEntry terminatedEntry = new ParticipantLogEntry(
+							entry.coordinatorId,entry.uri,entry.expires,entry.resourceName,TxState.TERMINATED);
+					this.getRecoveryLog().terminated(terminatedEntry);
+				}
+			}
+		}
+		return coordinatorLogEntry.wasCommitted;
+	}
+
+	/**
+	 * a span served for the tm,child of the phase two call. the context is bound to the thread
+	 * when the tm is this node.
+	 */
+	private Span startSpan(String name, String uniqueResourceName, Xid xid){
+		if(!XATracer.isEnabled()){
+			return null;
+		}
+		String tid = xid == null ? null : new String(xid.getGlobalTransactionId());
+		if(XATracer.current() != null){
+			return XATracer.startSpan(name, XATracer.current(), tid, uniqueResourceName, localAddress);
+		}
+		RpcContext context = RpcContext.getContext();
+		return XATracer.startSpan(name, XATracer.extract(), tid, uniqueResourceName, 
+				context.getRemoteAddress() == null ? null : context.getRemoteAddressString());
+	}
+	
+	private void finishSpan(Span span, String result){
+		if(span != null){
+			span.finish(result);
+		}
+	}
+	
+	private void finishSpan(Span span, XidResult[] results){
+		if(span == null){
+			return;
+		}
+		int failures = 0;
+		for(XidResult result : results){
+			if(!result.isSuccess()){
+				failures++;
+			}
+		}
+		span.finish(results.length + " branches," + failures + " failures");
+	}
 
 	public String getLocalAddress() {
 		return localAddress;
@@ -206,6 +475,28 @@ public class DubboTransactionManagerServiceImpl implements DubboTransactionManag
 		return repository;
 	}
 	
+	/**
+	 * installed once per atomikos start,null when atomikos is not started or the
+	 * repository can not be decorated.
+	 */
+	public IndexedRepository getIndexedRepository() {
+		RecoveryLog recoveryLog = this.getRecoveryLog();
+		if(recoveryLog == null || recoveryLog == indexedRecoveryLog){
+			return indexedRepository;
+		}
+		synchronized (this) {
+			if(recoveryLog != indexedRecoveryLog){
+				this.indexedRepository = IndexedRepository.install();
+				this.indexedRecoveryLog = recoveryLog;
+				this.repository = null;
+				if(indexedRepository != null){
+					LOGGER.info("coordinator log entries are indexed,{} loaded.", indexedRepository.size());
+				}
+			}
+		}
+		return indexedRepository;
+	}
+	
 	public RecoveryLog getRecoveryLog(){
 		RecoveryLog recoveryLog = Configuration.getRecoveryLog();
 		if(recoveryLog == null){
@@ -213,4 +504,41 @@ public class DubboTransactionManagerServiceImpl implements DubboTransactionManag
 		}
 		return recoveryLog;
 	}
+	
+	private static class RecoverScan {
+		
+		private final List<Xid> xids;
+		
+		private int position;
+		
+		private volatile long time = System.currentTimeMillis();
+
+		RecoverScan(List<Xid> xids) {
+			this.xids = xids;
+		}
+	}
+	
+	private static class ResourceGroupSynchronization implements Synchronization {
+
+		private static final long serialVersionUID = 1L;
+
+		private transient Map<String, ? extends Map<String, DubboXAResourceGroup>> resourceGroups;
+		
+		private String tid;
+		
+		ResourceGroupSynchronization(Map<String, ? extends Map<String, DubboXAResourceGroup>> resourceGroups, String tid) {
+			this.resourceGroups = resourceGroups;
+			this.tid = tid;
+		}
+
+		public void beforeCompletion() {
+			
+		}
+
+		public void afterCompletion(TxState state) {
+			if(resourceGroups != null){
+				resourceGroups.remove(tid);
+			}
+		}
+	}
 }
@@ -1,7 +1,11 @@
 package com.sxb.lin.atomikos.dubbo.service;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.RollbackException;
 import javax.transaction.SystemException;
@@ -12,25 +16,45 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
+import com.alibaba.dubbo.common.Constants;
 import com.alibaba.dubbo.config.ProtocolConfig;
 import com.alibaba.dubbo.config.ReferenceConfig;
 import com.alibaba.dubbo.config.ServiceConfig;
+import com.alibaba.dubbo.rpc.RpcContext;
+import com.alibaba.dubbo.rpc.RpcException;
+import com.atomikos.datasource.xa.XID;
 import com.atomikos.icatch.config.Configuration;
 import com.atomikos.recovery.CoordinatorLogEntry;
 import com.atomikos.recovery.LogReadException;
 import com.atomikos.recovery.ParticipantLogEntry;
 import com.atomikos.recovery.Repository;
 import com.atomikos.recovery.TxState;
+import com.sxb.lin.atomikos.dubbo.AsyncCommitQueue;
 import com.sxb.lin.atomikos.dubbo.AtomikosDubboException;
 import com.sxb.lin.atomikos.dubbo.DubboXATransactionalResource;
+import com.sxb.lin.atomikos.dubbo.diagnostics.DubboXADiagnosticsService;
+import com.sxb.lin.atomikos.dubbo.diagnostics.DubboXADiagnosticsServiceImpl;
+import com.sxb.lin.atomikos.dubbo.jfr.XAEventType;
+import com.sxb.lin.atomikos.dubbo.metrics.NoopXAMetrics;
+import com.sxb.lin.atomikos.dubbo.metrics.XAMetrics;
+import com.sxb.lin.atomikos.dubbo.metrics.XAOperation;
+import com.sxb.lin.atomikos.dubbo.pool.CommittedXidLog;
 import com.sxb.lin.atomikos.dubbo.pool.XAResourcePool;
 import com.sxb.lin.atomikos.dubbo.pool.recover.UniqueResource;
+import com.sxb.lin.atomikos.dubbo.recovery.IndexedRepository;
+import com.sxb.lin.atomikos.dubbo.recovery.RecoveryWorkers;
 import com.sxb.lin.atomikos.dubbo.rocketmq.MQProducerFor2PC;
+import com.sxb.lin.atomikos.dubbo.trace.NoopSpanExporter;
+import com.sxb.lin.atomikos.dubbo.trace.SpanExporter;
 
 public class DubboTransactionManagerServiceProxy implements DubboTransactionManagerService{
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(DubboTransactionManagerServiceProxy.class);
 	
+	private final static String METHOD_NOT_FOUND = "Not found method";
+	
+	private final static int TID_SUFFIX_LENGTH = 18;
+	
 	private final static DubboTransactionManagerServiceProxy INSTANCE = new DubboTransactionManagerServiceProxy();
 	
 	public static DubboTransactionManagerServiceProxy getInstance(){
@@ -51,6 +75,24 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
 	
 	private String uniqueResourceNames;
 	
+	private boolean asyncEnlistResource;
+	
+	private String branchPrefix;
+	
+	private AtomicLong branchCounter = new AtomicLong();
+	
+	private volatile boolean branchXidTooLongLogged;
+	
+	private AsyncCommitQueue asyncCommitQueue;
+	
+	private int maxPrepareFanOut;
+	
+	private boolean readOnlyBranch;
+	
+	private XAMetrics metrics = NoopXAMetrics.INSTANCE;
+	
+	private SpanExporter spanExporter = NoopSpanExporter.INSTANCE;
+	
 	private DubboTransactionManagerServiceProxy() {
 		
 	}
@@ -59,9 +101,23 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
 		if(inited){
 			return;
 		}
-		dubboXATransactionalResource = new DubboXATransactionalResource(config.getExcludeResourceNames());
+		DubboXidSerializerFactory.register(config.isCompactXidSerialization());
+		dubboXATransactionalResource = new DubboXATransactionalResource(config.getExcludeResourceNames(), 
+				new RecoveryWorkers(config.getRecoveryThreads(), config.getRecoveryTimeoutMillis()));
+		asyncEnlistResource = config.isAsyncEnlistResource();
+		maxPrepareFanOut = config.getMaxPrepareFanOut();
+		readOnlyBranch = config.isReadOnlyBranch();
+		if(config.getMetrics() != null){
+			metrics = config.getMetrics();
+		}
+		if(config.getSpanExporter() != null){
+			spanExporter = config.getSpanExporter();
+		}
 		this.export(config);
 		this.reference(config);
+		if(config.isAsyncCommit()){
+			this.initAsyncCommitQueue(config);
+		}
 		inited = true;
 		Configuration.addResource(dubboXATransactionalResource);
 	}
@@ -71,8 +127,18 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
 		this.uniqueResourceNames = StringUtils.collectionToCommaDelimitedString(uniqueResourceMapping.keySet());
 		Map<String, String> parameters = new HashMap<String, String>();
 		parameters.put("uniqueResourceNames", uniqueResourceNames);
+		if(StringUtils.hasLength(config.getServiceSerialization())){
+			parameters.put(Constants.SERIALIZATION_KEY, config.getServiceSerialization());
+		}
 		
-		xaResourcePool = new XAResourcePool(uniqueResourceMapping);
+		xaResourcePool = new XAResourcePool(uniqueResourceMapping, config.getExpiryTickMillis());
+		try {
+			xaResourcePool.setCommittedXidLog(new CommittedXidLog(Configuration.getConfigProperties().getLogBaseDir()));
+		} catch (IOException e) {
+			xaResourcePool.close();
+			throw new AtomikosDubboException("committed xid log init fail.", e);
+		}
+		metrics.bindPool(xaResourcePool.getStats());
 		DubboTransactionManagerServiceImpl dubboTransactionManagerService = 
 				new DubboTransactionManagerServiceImpl(xaResourcePool,dubboXATransactionalResource);
 		
@@ -112,8 +178,24 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
         }
         serviceConfig.export();
         localAddress = serviceConfig.toUrl().getAddress();
+        branchPrefix = String.format("%08x", localAddress.hashCode());
         dubboTransactionManagerService.setLocalAddress(localAddress);
         localDubboTransactionManagerService = dubboTransactionManagerService;
+        
+        if(config.isExportDiagnosticsService()){
+        	this.exportDiagnosticsService(config, xaProtocolConfig);
+        }
+	}
+	
+	private void exportDiagnosticsService(DubboTransactionManagerServiceConfig config, ProtocolConfig xaProtocolConfig){
+		ServiceConfig<DubboXADiagnosticsService> serviceConfig = new ServiceConfig<DubboXADiagnosticsService>();
+		serviceConfig.setApplication(config.getApplicationConfig());
+		serviceConfig.setRegistry(config.getRegistryConfig());
+		serviceConfig.setProtocol(xaProtocolConfig);
+		serviceConfig.setProvider(config.getProviderConfig());
+		serviceConfig.setInterface(DubboXADiagnosticsService.class);
+		serviceConfig.setRef(new DubboXADiagnosticsServiceImpl(xaResourcePool, dubboXATransactionalResource));
+		serviceConfig.export();
 	}
 	
 	private void reference(DubboTransactionManagerServiceConfig config){
@@ -131,9 +213,28 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
         	}
 		}
 		referenceConfig.setScope("remote");
+		if(StringUtils.hasLength(config.getServiceSerialization())){
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(Constants.SERIALIZATION_KEY, config.getServiceSerialization());
+			referenceConfig.setParameters(parameters);
+			referenceConfig.setConnections(1);
+		}
 		remoteDubboTransactionManagerService = referenceConfig.get();
 	}
 	
+	private void initAsyncCommitQueue(DubboTransactionManagerServiceConfig config){
+		String logBaseDir = Configuration.getConfigProperties().getLogBaseDir();
+		AsyncCommitQueue queue = new AsyncCommitQueue(logBaseDir, 
+				config.getAsyncCommitThreads(), config.getAsyncCommitQueueSize());
+		try {
+			queue.init();
+		} catch (IOException e) {
+			queue.close();
+			throw new AtomikosDubboException("async commit queue init fail.", e);
+		}
+		asyncCommitQueue = queue;
+	}
+	
 	private void check(Object service){
 		if(service == null){
 			throw new AtomikosDubboException("DubboTransactionManagerServiceFactory must be init.");
@@ -145,13 +246,39 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
 	}
 	
 	private Xid converXid(Xid xid){
-		DubboXid dubboXid = new DubboXid();
-		dubboXid.setFormatId(xid.getFormatId());
-		dubboXid.setBranchQualifier(xid.getBranchQualifier());
-		dubboXid.setGlobalTransactionId(xid.getGlobalTransactionId());
-		dubboXid.setBranchQualifierStr(new String(xid.getBranchQualifier()));
-		dubboXid.setGlobalTransactionIdStr(new String(xid.getGlobalTransactionId()));
-		return dubboXid;
+		return DubboXid.valueOf(xid);
+	}
+	
+	private Xid firstXid(Xid[] xids){
+		return xids.length > 0 ? xids[0] : null;
+	}
+	
+	/**
+	 * true when the call failed because the remote node runs an older version without the method,
+	 * dubbo reports it as an RpcException with the NoSuchMethodException message of the provider.
+	 */
+	public static boolean isMethodNotFound(Throwable e){
+		if(!(e instanceof RpcException)){
+			return false;
+		}
+		for(Throwable t = e;t != null;t = t.getCause()){
+			String message = t.getMessage();
+			if(message != null && message.contains(METHOD_NOT_FOUND)){
+				return true;
+			}
+			if(t.getCause() == t){
+				break;
+			}
+		}
+		return false;
+	}
+	
+	private Xid[] converXids(Xid[] xids){
+		Xid[] converXids = new Xid[xids.length];
+		for(int i = 0;i < xids.length;i++){
+			converXids[i] = converXid(xids[i]);
+		}
+		return converXids;
 	}
 
 	public DubboTransactionManagerService getRemoteDubboTransactionManagerService() {
@@ -163,6 +290,16 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
 		this.check(localDubboTransactionManagerService);
 		return localDubboTransactionManagerService;
 	}
+	
+	/**
+	 * null before init,see DubboTransactionManagerServiceImpl.getIndexedRepository.
+	 */
+	public IndexedRepository getIndexedRepository() {
+		if(localDubboTransactionManagerService == null){
+			return null;
+		}
+		return ((DubboTransactionManagerServiceImpl) localDubboTransactionManagerService).getIndexedRepository();
+	}
 
 	public String getLocalAddress() {
 		this.check(localAddress);
@@ -173,10 +310,30 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
 		return xaResourcePool;
 	}
 	
+	public AsyncCommitQueue getAsyncCommitQueue() {
+		return asyncCommitQueue;
+	}
+	
 	public DubboXATransactionalResource getDubboXATransactionalResource() {
 		return dubboXATransactionalResource;
 	}
 	
+	public int getMaxPrepareFanOut() {
+		return maxPrepareFanOut;
+	}
+	
+	public boolean isReadOnlyBranch() {
+		return readOnlyBranch;
+	}
+	
+	public XAMetrics getMetrics() {
+		return metrics;
+	}
+
+	public SpanExporter getSpanExporter() {
+		return spanExporter;
+	}
+	
 	public String getUniqueResourceNames() {
 		return uniqueResourceNames;
 	}
@@ -188,69 +345,329 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
 
 	public StartXid enlistResource(String remoteAddress, String uniqueResourceName, String tid,
 			String localAddress) throws SystemException, RollbackException {
-		if(this.isLocal(remoteAddress)){
-			return this.getLocalDubboTransactionManagerService()
-					.enlistResource(remoteAddress, uniqueResourceName, tid, localAddress);
-		}else{
-			return this.getRemoteDubboTransactionManagerService()
-					.enlistResource(remoteAddress, uniqueResourceName, tid, localAddress);
+		CallScope scope = CallScope.begin(metrics, XAOperation.ENLIST, XAEventType.ENLIST, "enlist", 
+				tid, null, uniqueResourceName, remoteAddress);
+		boolean success = false;
+		try {
+			StartXid startXid = null;
+			if(this.isLocal(remoteAddress)){
+				startXid = this.getLocalDubboTransactionManagerService()
+						.enlistResource(remoteAddress, uniqueResourceName, tid, localAddress);
+			}else{
+				startXid = this.getRemoteDubboTransactionManagerService()
+						.enlistResource(remoteAddress, uniqueResourceName, tid, localAddress);
+			}
+			success = true;
+			return startXid;
+		} finally {
+			scope.end(success);
 		}
 	}
 
+	public StartXid enlistResource(String remoteAddress, String uniqueResourceName, String tid,
+			String localAddress, Xid xid) throws SystemException, RollbackException {
+		Xid converXid = converXid(xid);
+		CallScope scope = CallScope.begin(metrics, XAOperation.ENLIST, XAEventType.ENLIST, "enlist", 
+				tid, converXid, uniqueResourceName, remoteAddress);
+		boolean success = false;
+		try {
+			StartXid startXid = null;
+			if(this.isLocal(remoteAddress)){
+				startXid = this.getLocalDubboTransactionManagerService()
+						.enlistResource(remoteAddress, uniqueResourceName, tid, localAddress, converXid);
+			}else{
+				startXid = this.getRemoteDubboTransactionManagerService()
+						.enlistResource(remoteAddress, uniqueResourceName, tid, localAddress, converXid);
+			}
+			success = true;
+			return startXid;
+		} finally {
+			scope.end(success);
+		}
+	}
+	
+	/**
+	 * branch xid generated by the participant for async enlist,
+	 * null when async enlist is disabled, the tm is local or the xid would be too long.
+	 * the bqual is the tm unique name,the node prefix and a counter,recovery on the tm
+	 * selects its branches by the tm unique name at the start of the bqual.
+	 */
+	public Xid createBranchXid(String remoteAddress, String tid){
+		if(!asyncEnlistResource || this.isLocal(remoteAddress)){
+			return null;
+		}
+		String branch = this.getTmUniqueName(tid) + branchPrefix + branchCounter.incrementAndGet();
+		if(tid.getBytes().length > Xid.MAXGTRIDSIZE || branch.getBytes().length > Xid.MAXBQUALSIZE){
+			if(!branchXidTooLongLogged){
+				branchXidTooLongLogged = true;
+				LOGGER.warn("branch xid {} of transaction {} is too long,async enlist falls back to enlistResource.", branch, tid);
+			}
+			return null;
+		}
+		return converXid(new XID(tid, branch));
+	}
+	
+	/**
+	 * atomikos builds a tid as the tm unique name,the time millis and a 5 digit counter,
+	 * the whole tid when it does not end with those digits.
+	 */
+	private String getTmUniqueName(String tid){
+		int end = tid.length() - TID_SUFFIX_LENGTH;
+		if(end <= 0){
+			return tid;
+		}
+		for(int i = end;i < tid.length();i++){
+			if(!Character.isDigit(tid.charAt(i))){
+				return tid;
+			}
+		}
+		return tid.substring(0, end);
+	}
+	
+	public Future<StartXid> asyncEnlistResource(final String remoteAddress, final String uniqueResourceName, 
+			final String tid, final String localAddress, final Xid xid){
+		final DubboTransactionManagerService service = this.getRemoteDubboTransactionManagerService();
+		final Xid converXid = converXid(xid);
+		CallScope scope = CallScope.begin(metrics, XAOperation.ASYNC_ENLIST, XAEventType.ENLIST, "enlist", 
+				tid, converXid, uniqueResourceName, remoteAddress);
+		Future<StartXid> future = null;
+		try {
+			future = RpcContext.getContext().asyncCall(new Callable<StartXid>() {
+				public StartXid call() throws Exception {
+					return service.enlistResource(remoteAddress, uniqueResourceName, tid, localAddress, converXid);
+				}
+			});
+		} finally {
+			scope.detach();
+		}
+		scope.endAsync(future);
+		return future;
+	}
+
 	public int prepare(String remoteAddress, String uniqueResourceName, Xid xid) throws XAException {
 		Xid converXid = converXid(xid);
-		if(this.isLocal(remoteAddress)){
-			return this.getLocalDubboTransactionManagerService().prepare(remoteAddress, uniqueResourceName, converXid);
-		}else{
-			return this.getRemoteDubboTransactionManagerService().prepare(remoteAddress, uniqueResourceName, converXid);
+		CallScope scope = CallScope.begin(metrics, XAOperation.PREPARE, XAEventType.PREPARE_RPC, "prepare", 
+				null, converXid, uniqueResourceName, remoteAddress);
+		boolean success = false;
+		int prepare = -1;
+		try {
+			if(this.isLocal(remoteAddress)){
+				prepare = this.getLocalDubboTransactionManagerService().prepare(remoteAddress, uniqueResourceName, converXid);
+			}else{
+				prepare = this.getRemoteDubboTransactionManagerService().prepare(remoteAddress, uniqueResourceName, converXid);
+			}
+			success = true;
+			return prepare;
+		} finally {
+			scope.end(success, String.valueOf(prepare));
 		}
 	}
 
 	public void commit(String remoteAddress, String uniqueResourceName, Xid xid, boolean onePhase)
 			throws XAException {
 		Xid converXid = converXid(xid);
-		if(this.isLocal(remoteAddress)){
-			this.getLocalDubboTransactionManagerService().commit(remoteAddress, uniqueResourceName, converXid, onePhase);
-		}else{
-			this.getRemoteDubboTransactionManagerService().commit(remoteAddress, uniqueResourceName, converXid, onePhase);
+		CallScope scope = CallScope.begin(metrics, XAOperation.COMMIT, XAEventType.COMMIT_RPC, "commit", 
+				null, converXid, uniqueResourceName, remoteAddress);
+		boolean success = false;
+		try {
+			if(this.isLocal(remoteAddress)){
+				this.getLocalDubboTransactionManagerService().commit(remoteAddress, uniqueResourceName, converXid, onePhase);
+			}else{
+				this.getRemoteDubboTransactionManagerService().commit(remoteAddress, uniqueResourceName, converXid, onePhase);
+			}
+			success = true;
+		} finally {
+			scope.end(success);
 		}
 	}
 
 	public void rollback(String remoteAddress, String uniqueResourceName, Xid xid) throws XAException {
 		Xid converXid = converXid(xid);
+		CallScope scope = CallScope.begin(metrics, XAOperation.ROLLBACK, XAEventType.ROLLBACK_RPC, "rollback", 
+				null, converXid, uniqueResourceName, remoteAddress);
+		boolean success = false;
+		try {
+			if(this.isLocal(remoteAddress)){
+				this.getLocalDubboTransactionManagerService().rollback(remoteAddress, uniqueResourceName, converXid);
+			}else{
+				this.getRemoteDubboTransactionManagerService().rollback(remoteAddress, uniqueResourceName, converXid);
+			}
+			success = true;
+		} finally {
+			scope.end(success);
+		}
+	}
+
+	public XidResult[] batchPrepare(String remoteAddress, String[] uniqueResourceNames, Xid[] xids) throws XAException {
+		Xid[] converXids = converXids(xids);
+		CallScope scope = CallScope.begin(metrics, XAOperation.BATCH_PREPARE, XAEventType.PREPARE_RPC, "prepare", 
+				null, this.firstXid(converXids), StringUtils.arrayToCommaDelimitedString(uniqueResourceNames), remoteAddress);
+		boolean success = false;
+		try {
+			XidResult[] results = null;
+			if(this.isLocal(remoteAddress)){
+				results = this.getLocalDubboTransactionManagerService().batchPrepare(remoteAddress, uniqueResourceNames, converXids);
+			}else{
+				results = this.getRemoteDubboTransactionManagerService().batchPrepare(remoteAddress, uniqueResourceNames, converXids);
+			}
+			success = true;
+			return results;
+		} finally {
+			scope.end(success, converXids.length + " ok");
+		}
+	}
+
+	/**
+	 * null when the node is local,the caller should use batchPrepare instead.
+	 */
+	public Future<XidResult[]> asyncBatchPrepare(final String remoteAddress, final String[] uniqueResourceNames, Xid[] xids){
 		if(this.isLocal(remoteAddress)){
-			this.getLocalDubboTransactionManagerService().rollback(remoteAddress, uniqueResourceName, converXid);
-		}else{
-			this.getRemoteDubboTransactionManagerService().rollback(remoteAddress, uniqueResourceName, converXid);
+			return null;
+		}
+		final DubboTransactionManagerService service = this.getRemoteDubboTransactionManagerService();
+		final Xid[] converXids = converXids(xids);
+		CallScope scope = CallScope.begin(metrics, XAOperation.ASYNC_BATCH_PREPARE, XAEventType.PREPARE_RPC, "prepare", 
+				null, this.firstXid(converXids), StringUtils.arrayToCommaDelimitedString(uniqueResourceNames), remoteAddress);
+		Future<XidResult[]> future = null;
+		try {
+			future = RpcContext.getContext().asyncCall(new Callable<XidResult[]>() {
+				public XidResult[] call() throws Exception {
+					return service.batchPrepare(remoteAddress, uniqueResourceNames, converXids);
+				}
+			});
+		} finally {
+			scope.detach();
+		}
+		scope.endAsync(future);
+		return future;
+	}
+
+	public XidResult[] batchCommit(String remoteAddress, String[] uniqueResourceNames, Xid[] xids) throws XAException {
+		Xid[] converXids = converXids(xids);
+		CallScope scope = CallScope.begin(metrics, XAOperation.BATCH_COMMIT, XAEventType.COMMIT_RPC, "commit", 
+				null, this.firstXid(converXids), StringUtils.arrayToCommaDelimitedString(uniqueResourceNames), remoteAddress);
+		boolean success = false;
+		try {
+			XidResult[] results = null;
+			if(this.isLocal(remoteAddress)){
+				results = this.getLocalDubboTransactionManagerService().batchCommit(remoteAddress, uniqueResourceNames, converXids);
+			}else{
+				results = this.getRemoteDubboTransactionManagerService().batchCommit(remoteAddress, uniqueResourceNames, converXids);
+			}
+			success = true;
+			return results;
+		} finally {
+			scope.end(success, converXids.length + " ok");
+		}
+	}
+
+	public XidResult[] batchRollback(String remoteAddress, String[] uniqueResourceNames, Xid[] xids) throws XAException {
+		Xid[] converXids = converXids(xids);
+		CallScope scope = CallScope.begin(metrics, XAOperation.BATCH_ROLLBACK, XAEventType.ROLLBACK_RPC, "rollback", 
+				null, this.firstXid(converXids), StringUtils.arrayToCommaDelimitedString(uniqueResourceNames), remoteAddress);
+		boolean success = false;
+		try {
+			XidResult[] results = null;
+			if(this.isLocal(remoteAddress)){
+				results = this.getLocalDubboTransactionManagerService().batchRollback(remoteAddress, uniqueResourceNames, converXids);
+			}else{
+				results = this.getRemoteDubboTransactionManagerService().batchRollback(remoteAddress, uniqueResourceNames, converXids);
+			}
+			success = true;
+			return results;
+		} finally {
+			scope.end(success, converXids.length + " ok");
 		}
 	}
 
 	public Xid[] recover(String remoteAddress, String uniqueResourceName, int flag) throws XAException {
-		if(this.isLocal(remoteAddress)){
-			return this.getLocalDubboTransactionManagerService().recover(remoteAddress, uniqueResourceName, flag);
-		}else{
-			return this.getRemoteDubboTransactionManagerService().recover(remoteAddress, uniqueResourceName, flag);
+		CallScope scope = CallScope.begin(metrics, XAOperation.RECOVER, remoteAddress);
+		boolean success = false;
+		try {
+			Xid[] xids = null;
+			if(this.isLocal(remoteAddress)){
+				xids = this.getLocalDubboTransactionManagerService().recover(remoteAddress, uniqueResourceName, flag);
+			}else{
+				xids = this.getRemoteDubboTransactionManagerService().recover(remoteAddress, uniqueResourceName, flag);
+			}
+			success = true;
+			return xids;
+		} finally {
+			scope.end(success);
+		}
+	}
+
+	public RecoverPage recover(String remoteAddress, String uniqueResourceName, int formatId, 
+			String tidPrefix, String cursor, int pageSize) throws XAException {
+		CallScope scope = CallScope.begin(metrics, XAOperation.RECOVER, remoteAddress);
+		boolean success = false;
+		try {
+			RecoverPage page = null;
+			if(this.isLocal(remoteAddress)){
+				page = this.getLocalDubboTransactionManagerService().recover(remoteAddress, uniqueResourceName, 
+						formatId, tidPrefix, cursor, pageSize);
+			}else{
+				page = this.getRemoteDubboTransactionManagerService().recover(remoteAddress, uniqueResourceName, 
+						formatId, tidPrefix, cursor, pageSize);
+			}
+			success = true;
+			return page;
+		} finally {
+			scope.end(success);
 		}
 	}
 
 	public long ping(String remoteAddress) {
+		CallScope scope = CallScope.begin(metrics, XAOperation.PING, remoteAddress);
+		boolean success = false;
 		try {
+			long ping;
 			if(this.isLocal(remoteAddress)){
-				return this.getLocalDubboTransactionManagerService().ping(remoteAddress);
+				ping = this.getLocalDubboTransactionManagerService().ping(remoteAddress);
 			}else{
-				return this.getRemoteDubboTransactionManagerService().ping(remoteAddress);
+				ping = this.getRemoteDubboTransactionManagerService().ping(remoteAddress);
 			}
+			success = true;
+			return ping;
 		} catch (Exception e) {
 			LOGGER.error(e.getMessage(), e);
 			return -1;
+		} finally {
+			scope.end(success);
 		}
 	}
 
 	public Boolean wasCommitted(String remoteAddress, String tid, String uri) {
-		if(this.isLocal(remoteAddress)){
-			return this.getLocalDubboTransactionManagerService().wasCommitted(remoteAddress, tid, uri);
-		}else{
-			return this.getRemoteDubboTransactionManagerService().wasCommitted(remoteAddress, tid, uri);
+		CallScope scope = CallScope.begin(metrics, XAOperation.WAS_COMMITTED, remoteAddress);
+		boolean success = false;
+		try {
+			Boolean wasCommitted = null;
+			if(this.isLocal(remoteAddress)){
+				wasCommitted = this.getLocalDubboTransactionManagerService().wasCommitted(remoteAddress, tid, uri);
+			}else{
+				wasCommitted = this.getRemoteDubboTransactionManagerService().wasCommitted(remoteAddress, tid, uri);
+			}
+			success = true;
+			return wasCommitted;
+		} finally {
+			scope.end(success);
+		}
+	}
+
+	public Boolean[] batchWasCommitted(String remoteAddress, String[] tids, String[] uris) {
+		CallScope scope = CallScope.begin(metrics, XAOperation.BATCH_WAS_COMMITTED, remoteAddress);
+		boolean success = false;
+		try {
+			Boolean[] wasCommitted = null;
+			if(this.isLocal(remoteAddress)){
+				wasCommitted = this.getLocalDubboTransactionManagerService().batchWasCommitted(remoteAddress, tids, uris);
+			}else{
+				wasCommitted = this.getRemoteDubboTransactionManagerService().batchWasCommitted(remoteAddress, tids, uris);
+			}
+			success = true;
+			return wasCommitted;
+		} finally {
+			scope.end(success);
 		}
 	}
 
@@ -259,13 +676,17 @@ public class DubboTransactionManagerServiceProxy implements DubboTransactionMana
 			return false;
 		}
 		DubboTransactionManagerServiceImpl impl = (DubboTransactionManagerServiceImpl) this.localDubboTransactionManagerService;
+		String tid = DubboXid.tidOf(xid);
+		String uri = DubboXid.uriOf(xid);
+		IndexedRepository indexedRepository = impl.getIndexedRepository();
+		if(indexedRepository != null){
+			return indexedRepository.wasTerminated(tid, uri, uniqueResourceName);
+		}
 		Repository repository = impl.getRepository();
 		if(repository == null){
 			return false;
 		}
 		try {
-			String tid = new String(xid.getGlobalTransactionId());
-			String uri = new String(xid.getBranchQualifier());
 			CoordinatorLogEntry coordinatorLogEntry = repository.get(tid);
 			if(coordinatorLogEntry == null){
 				return false;
@@ -1,61 +1,155 @@
 package com.sxb.lin.atomikos.dubbo.service;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 import javax.transaction.xa.Xid;
 
+/**
+ * Xid whose equality and hash are computed over the raw bytes,the hash and the string forms
+ * are computed once. treat it as immutable,the setters are only kept for 1.2.0 callers.
+ */
 public class DubboXid implements Xid,Serializable{
-	
+
 	private static final long serialVersionUID = 1L;
 
 	private int formatId;
-	
-    private byte[] branchQualifier;
-    
+
     private byte[] globalTransactionId;
-    
-    private String branchQualifierStr;
-    
-    private String globalTransactionIdStr;
-	
+
+    private byte[] branchQualifier;
+
+	private transient int hash;
+
+	private transient String globalTransactionIdStr;
+
+	private transient String branchQualifierStr;
+
+	/**
+	 * @deprecated use {@link #DubboXid(int, byte[], byte[])}
+	 */
+	@Deprecated
+	public DubboXid() {
+	}
+
+	public DubboXid(int formatId, byte[] globalTransactionId, byte[] branchQualifier) {
+		this.formatId = formatId;
+		this.globalTransactionId = globalTransactionId.clone();
+		this.branchQualifier = branchQualifier.clone();
+	}
+
+	public static DubboXid valueOf(Xid xid){
+		if(xid instanceof DubboXid){
+			return (DubboXid) xid;
+		}
+		return new DubboXid(xid.getFormatId(), xid.getGlobalTransactionId(), xid.getBranchQualifier());
+	}
+
+	/**
+	 * the gtrid of xid,not copied when xid is a DubboXid so it must not be modified.
+	 */
+	public static byte[] globalTransactionIdOf(Xid xid){
+		return xid instanceof DubboXid ? ((DubboXid) xid).globalTransactionId : xid.getGlobalTransactionId();
+	}
+
+	/**
+	 * the bqual of xid,not copied when xid is a DubboXid so it must not be modified.
+	 */
+	public static byte[] branchQualifierOf(Xid xid){
+		return xid instanceof DubboXid ? ((DubboXid) xid).branchQualifier : xid.getBranchQualifier();
+	}
+
+	/**
+	 * the tid of xid,cached when xid is a DubboXid.
+	 */
+	public static String tidOf(Xid xid){
+		return xid instanceof DubboXid ? ((DubboXid) xid).getGlobalTransactionIdStr() : new String(xid.getGlobalTransactionId());
+	}
+
+	/**
+	 * the uri of xid,cached when xid is a DubboXid.
+	 */
+	public static String uriOf(Xid xid){
+		return xid instanceof DubboXid ? ((DubboXid) xid).getBranchQualifierStr() : new String(xid.getBranchQualifier());
+	}
+
 	public int getFormatId() {
 		return formatId;
 	}
 
+	/**
+	 * @deprecated use {@link #DubboXid(int, byte[], byte[])}
+	 */
+	@Deprecated
 	public void setFormatId(int formatId) {
 		this.formatId = formatId;
+		this.hash = 0;
 	}
 
 	public byte[] getBranchQualifier() {
-		return branchQualifier;
+		return branchQualifier == null ? null : branchQualifier.clone();
 	}
 
+	/**
+	 * @deprecated use {@link #DubboXid(int, byte[], byte[])}
+	 */
+	@Deprecated
 	public void setBranchQualifier(byte[] branchQualifier) {
-		this.branchQualifier = branchQualifier;
+		this.branchQualifier = branchQualifier == null ? null : branchQualifier.clone();
+		this.branchQualifierStr = null;
+		this.hash = 0;
 	}
 
 	public byte[] getGlobalTransactionId() {
-		return globalTransactionId;
+		return globalTransactionId == null ? null : globalTransactionId.clone();
 	}
 
+	/**
+	 * @deprecated use {@link #DubboXid(int, byte[], byte[])}
+	 */
+	@Deprecated
 	public void setGlobalTransactionId(byte[] globalTransactionId) {
-		this.globalTransactionId = globalTransactionId;
+		this.globalTransactionId = globalTransactionId == null ? null : globalTransactionId.clone();
+		this.globalTransactionIdStr = null;
+		this.hash = 0;
 	}
 
 	public String getBranchQualifierStr() {
-		return branchQualifierStr;
+		String str = branchQualifierStr;
+		if(str == null && branchQualifier != null){
+			str = new String(branchQualifier);
+			branchQualifierStr = str;
+		}
+		return str;
 	}
 
+	/**
+	 * @deprecated use {@link #DubboXid(int, byte[], byte[])}
+	 */
+	@Deprecated
 	public void setBranchQualifierStr(String branchQualifierStr) {
+		this.branchQualifier = branchQualifierStr == null ? null : branchQualifierStr.getBytes();
 		this.branchQualifierStr = branchQualifierStr;
+		this.hash = 0;
 	}
 
 	public String getGlobalTransactionIdStr() {
-		return globalTransactionIdStr;
+		String str = globalTransactionIdStr;
+		if(str == null && globalTransactionId != null){
+			str = new String(globalTransactionId);
+			globalTransactionIdStr = str;
+		}
+		return str;
 	}
 
+	/**
+	 * @deprecated use {@link #DubboXid(int, byte[], byte[])}
+	 */
+	@Deprecated
 	public void setGlobalTransactionIdStr(String globalTransactionIdStr) {
+		this.globalTransactionId = globalTransactionIdStr == null ? null : globalTransactionIdStr.getBytes();
 		this.globalTransactionIdStr = globalTransactionIdStr;
+		this.hash = 0;
 	}
 
 	@Override
@@ -64,12 +158,13 @@ public class DubboXid implements Xid,Serializable{
 			return true;
 		if (obj instanceof DubboXid) {
 			DubboXid xid = (DubboXid) obj;
-			return xid.getBranchQualifierStr().equals(getBranchQualifierStr()) 
-					&& xid.getGlobalTransactionIdStr().equals(getGlobalTransactionIdStr());
+			return xid.hashCode() == hashCode() && xid.formatId == formatId
+					&& Arrays.equals(xid.branchQualifier, branchQualifier)
+					&& Arrays.equals(xid.globalTransactionId, globalTransactionId);
 		}
 		return false;
     }
-	
+
 	@Override
 	public String toString() {
         return getBranchQualifierStr() + getGlobalTransactionIdStr();
@@ -77,6 +172,11 @@ public class DubboXid implements Xid,Serializable{
 
 	@Override
 	public int hashCode() {
-        return toString ().hashCode ();
+		int h = hash;
+		if(h == 0){
+			h = 31 * (31 * formatId + Arrays.hashCode(globalTransactionId)) + Arrays.hashCode(branchQualifier);
+			hash = h;
+		}
+        return h;
     }
 }
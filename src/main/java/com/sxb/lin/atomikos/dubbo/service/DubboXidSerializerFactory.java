@@ -0,0 +1,217 @@
+package com.sxb.lin.atomikos.dubbo.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.alibaba.com.caucho.hessian.io.AbstractDeserializer;
+import com.alibaba.com.caucho.hessian.io.AbstractHessianInput;
+import com.alibaba.com.caucho.hessian.io.AbstractHessianOutput;
+import com.alibaba.com.caucho.hessian.io.AbstractSerializer;
+import com.alibaba.com.caucho.hessian.io.AbstractSerializerFactory;
+import com.alibaba.com.caucho.hessian.io.Deserializer;
+import com.alibaba.com.caucho.hessian.io.HessianProtocolException;
+import com.alibaba.com.caucho.hessian.io.Serializer;
+import com.alibaba.dubbo.common.serialize.support.hessian.Hessian2SerializerFactory;
+
+/**
+ * Writes DubboXid either in the legacy bean layout (formatId,branchQualifier,globalTransactionId
+ * and their string copies) or,when compact,as one hessian binary field: formatId,gtrid length,gtrid,bqual.
+ * Both layouts are always read,only enable compact once every node of the cluster can read it.
+ */
+public class DubboXidSerializerFactory extends AbstractSerializerFactory {
+
+	private final static String FIELD_NAME = "value";
+
+	private final static String FORMAT_ID = "formatId";
+
+	private final static String BRANCH_QUALIFIER = "branchQualifier";
+
+	private final static String GLOBAL_TRANSACTION_ID = "globalTransactionId";
+
+	private final static String BRANCH_QUALIFIER_STR = "branchQualifierStr";
+
+	private final static String GLOBAL_TRANSACTION_ID_STR = "globalTransactionIdStr";
+
+	private final static String[] LEGACY_FIELD_NAMES = new String[]{FORMAT_ID, BRANCH_QUALIFIER, 
+		GLOBAL_TRANSACTION_ID, BRANCH_QUALIFIER_STR, GLOBAL_TRANSACTION_ID_STR};
+
+	private final static String[] COMPACT_FIELD_NAMES = new String[]{FIELD_NAME};
+
+	private static volatile boolean registered = false;
+
+	private final DubboXidSerializer serializer;
+
+	private final DubboXidDeserializer deserializer = new DubboXidDeserializer();
+
+	private DubboXidSerializerFactory(boolean compact) {
+		this.serializer = new DubboXidSerializer(compact);
+	}
+
+	public static synchronized void register(boolean compact){
+		if(registered){
+			return;
+		}
+		Hessian2SerializerFactory.SERIALIZER_FACTORY.addFactory(new DubboXidSerializerFactory(compact));
+		registered = true;
+	}
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Serializer getSerializer(Class cl) throws HessianProtocolException {
+		return cl == DubboXid.class ? serializer : null;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Deserializer getDeserializer(Class cl) throws HessianProtocolException {
+		return cl == DubboXid.class ? deserializer : null;
+	}
+
+	static byte[] encode(DubboXid xid){
+		byte[] gtrid = DubboXid.globalTransactionIdOf(xid);
+		byte[] bqual = DubboXid.branchQualifierOf(xid);
+		ByteBuffer buffer = ByteBuffer.allocate(5 + gtrid.length + bqual.length);
+		buffer.putInt(xid.getFormatId());
+		buffer.put((byte) gtrid.length);
+		buffer.put(gtrid);
+		buffer.put(bqual);
+		return buffer.array();
+	}
+
+	static DubboXid decode(byte[] bytes){
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int formatId = buffer.getInt();
+		byte[] gtrid = new byte[buffer.get() & 0xff];
+		buffer.get(gtrid);
+		byte[] bqual = new byte[buffer.remaining()];
+		buffer.get(bqual);
+		return new DubboXid(formatId, gtrid, bqual);
+	}
+
+	private static class DubboXidSerializer extends AbstractSerializer {
+
+		private final boolean compact;
+
+		private final String[] fieldNames;
+
+		DubboXidSerializer(boolean compact) {
+			this.compact = compact;
+			this.fieldNames = compact ? COMPACT_FIELD_NAMES : LEGACY_FIELD_NAMES;
+		}
+
+		@Override
+		public void writeObject(Object obj, AbstractHessianOutput out) throws IOException {
+			if(obj == null){
+				out.writeNull();
+				return;
+			}
+			if(out.addRef(obj)){
+				return;
+			}
+			DubboXid xid = (DubboXid) obj;
+			String type = obj.getClass().getName();
+			int ref = out.writeObjectBegin(type);
+			if(ref < -1){
+				for(String fieldName : fieldNames){
+					out.writeString(fieldName);
+					this.writeField(fieldName, xid, out);
+				}
+				out.writeMapEnd();
+			}else{
+				if(ref == -1){
+					out.writeInt(fieldNames.length);
+					for(String fieldName : fieldNames){
+						out.writeString(fieldName);
+					}
+					out.writeObjectBegin(type);
+				}
+				for(String fieldName : fieldNames){
+					this.writeField(fieldName, xid, out);
+				}
+			}
+		}
+
+		private void writeField(String fieldName, DubboXid xid, AbstractHessianOutput out) throws IOException {
+			if(compact){
+				out.writeBytes(encode(xid));
+			}else if(FORMAT_ID.equals(fieldName)){
+				out.writeInt(xid.getFormatId());
+			}else if(BRANCH_QUALIFIER.equals(fieldName)){
+				out.writeBytes(DubboXid.branchQualifierOf(xid));
+			}else if(GLOBAL_TRANSACTION_ID.equals(fieldName)){
+				out.writeBytes(DubboXid.globalTransactionIdOf(xid));
+			}else if(BRANCH_QUALIFIER_STR.equals(fieldName)){
+				out.writeString(xid.getBranchQualifierStr());
+			}else{
+				out.writeString(xid.getGlobalTransactionIdStr());
+			}
+		}
+	}
+
+	private static class DubboXidDeserializer extends AbstractDeserializer {
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public Class getType() {
+			return DubboXid.class;
+		}
+
+		@Override
+		public Object readMap(AbstractHessianInput in) throws IOException {
+			Fields fields = new Fields();
+			while(!in.isEnd()){
+				fields.read(in.readString(), in);
+			}
+			in.readMapEnd();
+			DubboXid xid = fields.toXid();
+			in.addRef(xid);
+			return xid;
+		}
+
+		@Override
+		public Object readObject(AbstractHessianInput in, String[] fieldNames) throws IOException {
+			Fields fields = new Fields();
+			for(String fieldName : fieldNames){
+				fields.read(fieldName, in);
+			}
+			DubboXid xid = fields.toXid();
+			in.addRef(xid);
+			return xid;
+		}
+	}
+
+	private static class Fields {
+
+		private byte[] value;
+
+		private int formatId;
+
+		private byte[] branchQualifier;
+
+		private byte[] globalTransactionId;
+
+		void read(String fieldName, AbstractHessianInput in) throws IOException {
+			if(FIELD_NAME.equals(fieldName)){
+				value = in.readBytes();
+			}else if(FORMAT_ID.equals(fieldName)){
+				formatId = in.readInt();
+			}else if(BRANCH_QUALIFIER.equals(fieldName)){
+				branchQualifier = in.readBytes();
+			}else if(GLOBAL_TRANSACTION_ID.equals(fieldName)){
+				globalTransactionId = in.readBytes();
+			}else{
+				in.readObject();
+			}
+		}
+
+		DubboXid toXid() throws IOException {
+			if(value != null){
+				return decode(value);
+			}
+			if(branchQualifier == null || globalTransactionId == null){
+				throw new HessianProtocolException("dubbo xid without " + FIELD_NAME + " or " 
+						+ GLOBAL_TRANSACTION_ID + "/" + BRANCH_QUALIFIER);
+			}
+			return new DubboXid(formatId, globalTransactionId, branchQualifier);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package com.sxb.lin.atomikos.dubbo.service;
+
+import java.io.Serializable;
+
+import javax.transaction.xa.Xid;
+
+public class RecoverPage implements Serializable{
+
+	private static final long serialVersionUID = 1L;
+
+	private Xid[] xids;
+
+	private String cursor;
+
+	public RecoverPage() {
+	}
+
+	public RecoverPage(Xid[] xids, String cursor) {
+		this.xids = xids;
+		this.cursor = cursor;
+	}
+
+	public Xid[] getXids() {
+		return xids;
+	}
+
+	public void setXids(Xid[] xids) {
+		this.xids = xids;
+	}
+
+	/**
+	 * null when the scan has no more page.
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+}
@@ -0,0 +1,71 @@
+package com.sxb.lin.atomikos.dubbo.service;
+
+import java.io.Serializable;
+
+import javax.transaction.xa.XAException;
+
+public class XidResult implements Serializable{
+
+	private static final long serialVersionUID = 1L;
+
+	private boolean success;
+
+	private int vote;
+
+	private int errorCode;
+
+	private String errorMessage;
+
+	public static XidResult success(int vote){
+		XidResult result = new XidResult();
+		result.setSuccess(true);
+		result.setVote(vote);
+		return result;
+	}
+
+	public static XidResult failure(XAException e){
+		XidResult result = new XidResult();
+		result.setSuccess(false);
+		result.setErrorCode(e.errorCode);
+		result.setErrorMessage(e.getMessage());
+		return result;
+	}
+
+	public XAException toXAException(){
+		XAException e = new XAException(errorMessage);
+		e.errorCode = errorCode;
+		return e;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public void setSuccess(boolean success) {
+		this.success = success;
+	}
+
+	public int getVote() {
+		return vote;
+	}
+
+	public void setVote(int vote) {
+		this.vote = vote;
+	}
+
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	public void setErrorCode(int errorCode) {
+		this.errorCode = errorCode;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+}
@@ -1,5 +1,6 @@
 package com.sxb.lin.atomikos.dubbo.spring.jdbc;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 
@@ -41,8 +42,23 @@ public class InitiatorXAConnectionHolder extends ConnectionHolder{
 		return xaResource;
 	}
 	
+	/**
+	 * the xa connection is enlisted when it is used for the first time,a transaction whose only
+	 * branch is a remote participant is then committed by atomikos in one phase.
+	 */
 	public void start(){
 		this.setTransactionActive(true);
+	}
+	
+	@Override
+	public Connection getConnection() {
+		if(this.xaResourceTransaction == null && this.isTransactionActive()){
+			this.enlist();
+		}
+		return super.getConnection();
+	}
+	
+	private void enlist(){
 		CompositeTransactionManager compositeTransactionManager = Configuration.getCompositeTransactionManager();
 		CompositeTransaction compositeTransaction = compositeTransactionManager.getCompositeTransaction();
 		long startTime = System.currentTimeMillis();
@@ -58,7 +74,10 @@ public class InitiatorXAConnectionHolder extends ConnectionHolder{
 	}
 
 	public void end(){
-		xaResourceTransaction.suspend();
+		if(xaResourceTransaction != null){
+			xaResourceTransaction.suspend();
+		}
+		this.setTransactionActive(false);
 	}
 	
 	@Override
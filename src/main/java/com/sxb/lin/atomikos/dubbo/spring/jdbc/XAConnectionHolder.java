@@ -15,7 +15,9 @@ import org.springframework.jdbc.datasource.ConnectionHolder;
 import org.springframework.transaction.NestedTransactionNotSupportedException;
 
 import com.sxb.lin.atomikos.dubbo.pool.JdbcXAResourceHolder;
+import com.sxb.lin.atomikos.dubbo.pool.WriteTrackingConnection;
 import com.sxb.lin.atomikos.dubbo.pool.XAResourceHolder;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
 
 public class XAConnectionHolder extends ConnectionHolder{
 	
@@ -48,8 +50,12 @@ public class XAConnectionHolder extends ConnectionHolder{
 			
 			String connStr = connection.toString();
 			String uuid = UUID.nameUUIDFromBytes(connStr.getBytes()).toString();
-			this.xaResourceHolder = new JdbcXAResourceHolder(
+			JdbcXAResourceHolder jdbcXAResourceHolder = new JdbcXAResourceHolder(
 					dubboUniqueResourceName, uuid, xaConnection, connection, xaResource);
+			if(DubboTransactionManagerServiceProxy.getInstance().isReadOnlyBranch()){
+				this.connection = WriteTrackingConnection.wrap(connection, jdbcXAResourceHolder);
+			}
+			this.xaResourceHolder = jdbcXAResourceHolder;
 			try {
 				this.xaResourceHolder.start();
 			} catch (XAException e) {
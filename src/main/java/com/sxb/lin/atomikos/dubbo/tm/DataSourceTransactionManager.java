@@ -36,6 +36,7 @@ import com.sxb.lin.atomikos.dubbo.spring.XAAnnotationInfo;
 import com.sxb.lin.atomikos.dubbo.spring.XAInvocationLocal;
 import com.sxb.lin.atomikos.dubbo.spring.jdbc.InitiatorXADataSourceUtils;
 import com.sxb.lin.atomikos.dubbo.spring.jdbc.XAConnectionHolder;
+import com.sxb.lin.atomikos.dubbo.trace.XATracer;
 
 public class DataSourceTransactionManager extends org.springframework.jdbc.datasource.DataSourceTransactionManager {
 
@@ -306,6 +307,7 @@ public class DataSourceTransactionManager extends org.springframework.jdbc.datas
 		local.setTmAddress(instance.getLocalAddress());
 		local.setTimeOut(time + "");
 		local.setActive(isActive);
+		local.setSpan(XATracer.startSpan("transaction", XATracer.current(), tid, null, null));
 		local.bindToThread();
 	}
 	
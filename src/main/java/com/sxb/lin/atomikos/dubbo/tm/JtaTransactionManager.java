@@ -16,6 +16,7 @@ import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerService;
 import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
 import com.sxb.lin.atomikos.dubbo.spring.XAAnnotationInfo;
 import com.sxb.lin.atomikos.dubbo.spring.XAInvocationLocal;
+import com.sxb.lin.atomikos.dubbo.trace.XATracer;
 
 
 public class JtaTransactionManager extends org.springframework.transaction.jta.JtaTransactionManager {
@@ -84,6 +85,7 @@ public class JtaTransactionManager extends org.springframework.transaction.jta.J
 		local.setTmAddress(instance.getLocalAddress());
 		local.setTimeOut(time + "");
 		local.setActive(isActive);
+		local.setSpan(XATracer.startSpan("transaction", XATracer.current(), tid, null, null));
 		local.bindToThread();
 	}
 	
@@ -0,0 +1,60 @@
+package com.sxb.lin.atomikos.dubbo.trace;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * keeps the last finished spans in memory,for tests and for a quick look at one node.
+ */
+public class InMemorySpanExporter implements SpanExporter {
+	
+	private final static int DEFAULT_CAPACITY = 10000;
+	
+	private final int capacity;
+	
+	private final LinkedList<Span> spans = new LinkedList<Span>();
+	
+	public InMemorySpanExporter() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public InMemorySpanExporter(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public synchronized void export(Span span) {
+		if(spans.size() == capacity){
+			spans.removeFirst();
+		}
+		spans.addLast(span);
+	}
+	
+	public synchronized List<Span> getSpans(){
+		return new ArrayList<Span>(spans);
+	}
+	
+	public synchronized List<Span> getSpans(String traceId){
+		List<Span> list = new ArrayList<Span>();
+		for(Span span : spans){
+			if(span.getTraceId().equals(traceId)){
+				list.add(span);
+			}
+		}
+		return list;
+	}
+	
+	public synchronized List<Span> getSpansByTid(String tid){
+		List<Span> list = new ArrayList<Span>();
+		for(Span span : spans){
+			if(tid.equals(span.getTid())){
+				list.add(span);
+			}
+		}
+		return list;
+	}
+	
+	public synchronized void clear(){
+		spans.clear();
+	}
+}
@@ -0,0 +1,17 @@
+package com.sxb.lin.atomikos.dubbo.trace;
+
+/**
+ * the default,no span is created while it is set.
+ */
+public class NoopSpanExporter implements SpanExporter {
+	
+	public final static NoopSpanExporter INSTANCE = new NoopSpanExporter();
+	
+	private NoopSpanExporter() {
+		
+	}
+
+	public void export(Span span) {
+		
+	}
+}
@@ -0,0 +1,125 @@
+package com.sxb.lin.atomikos.dubbo.trace;
+
+/**
+ * one timed step of an xa transaction on one node,exported once finished.
+ */
+public class Span {
+	
+	private final String name;
+	
+	private final String traceId;
+	
+	private final String spanId;
+	
+	private final String parentSpanId;
+	
+	private final String tid;
+	
+	private final String uniqueResourceName;
+	
+	private final String remoteAddress;
+	
+	private final String localAddress;
+	
+	private final long startTime;
+	
+	private final long startNanos;
+	
+	private final SpanExporter exporter;
+	
+	private volatile long durationNanos = -1;
+	
+	private volatile String result;
+
+	Span(String name, TraceContext parent, String tid, String uniqueResourceName, 
+			String remoteAddress, String localAddress, SpanExporter exporter) {
+		this.name = name;
+		this.traceId = parent == null ? TraceContext.nextTraceId() : parent.getTraceId();
+		this.spanId = TraceContext.nextId();
+		this.parentSpanId = parent == null ? null : parent.getSpanId();
+		this.tid = tid;
+		this.uniqueResourceName = uniqueResourceName;
+		this.remoteAddress = remoteAddress;
+		this.localAddress = localAddress;
+		this.startTime = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+		this.exporter = exporter;
+	}
+	
+	public TraceContext getContext(){
+		return new TraceContext(traceId, spanId);
+	}
+	
+	/**
+	 * only the first call is exported.
+	 */
+	public void finish(String result){
+		synchronized (this) {
+			if(durationNanos >= 0){
+				return;
+			}
+			this.result = result;
+			this.durationNanos = System.nanoTime() - startNanos;
+		}
+		exporter.export(this);
+	}
+	
+	public void finish(boolean success){
+		this.finish(success ? "ok" : "fail");
+	}
+	
+	public boolean isFinished(){
+		return durationNanos >= 0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTraceId() {
+		return traceId;
+	}
+
+	public String getSpanId() {
+		return spanId;
+	}
+
+	public String getParentSpanId() {
+		return parentSpanId;
+	}
+
+	public String getTid() {
+		return tid;
+	}
+
+	public String getUniqueResourceName() {
+		return uniqueResourceName;
+	}
+
+	public String getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	public String getLocalAddress() {
+		return localAddress;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	public String getResult() {
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "Span [name=" + name + ", traceId=" + traceId + ", spanId=" + spanId + ", parentSpanId=" + parentSpanId
+				+ ", tid=" + tid + ", uniqueResourceName=" + uniqueResourceName + ", remoteAddress=" + remoteAddress
+				+ ", localAddress=" + localAddress + ", durationNanos=" + durationNanos + ", result=" + result + "]";
+	}
+}
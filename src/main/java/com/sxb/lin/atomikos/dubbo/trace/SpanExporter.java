@@ -0,0 +1,10 @@
+package com.sxb.lin.atomikos.dubbo.trace;
+
+/**
+ * span exporter spi,set by DubboTransactionManagerServiceConfig.setSpanExporter.
+ * called on the transaction path when a span finishes,implementations must not block.
+ */
+public interface SpanExporter {
+
+	void export(Span span);
+}
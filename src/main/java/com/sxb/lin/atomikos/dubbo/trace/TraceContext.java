@@ -0,0 +1,64 @@
+package com.sxb.lin.atomikos.dubbo.trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * trace id and span id of the span that new spans are children of,
+ * sent to other nodes as the xaTrace attachment in the form traceId-spanId.
+ */
+public class TraceContext {
+	
+	private final static long SEED = System.nanoTime() ^ System.identityHashCode(TraceContext.class) * 0x9E3779B97F4A7C15L;
+	
+	private final static AtomicLong COUNTER = new AtomicLong();
+	
+	private final String traceId;
+	
+	private final String spanId;
+
+	public TraceContext(String traceId, String spanId) {
+		this.traceId = traceId;
+		this.spanId = spanId;
+	}
+	
+	static String nextId(){
+		long id = COUNTER.incrementAndGet() * 0x9E3779B97F4A7C15L + SEED;
+		id = (id ^ (id >>> 31)) * 0xBF58476D1CE4E5B9L;
+		return String.format("%016x", id ^ (id >>> 29));
+	}
+	
+	static String nextTraceId(){
+		return nextId() + nextId();
+	}
+
+	public String getTraceId() {
+		return traceId;
+	}
+
+	public String getSpanId() {
+		return spanId;
+	}
+	
+	public String encode(){
+		return traceId + "-" + spanId;
+	}
+	
+	/**
+	 * null when the value is empty or malformed.
+	 */
+	public static TraceContext decode(String value){
+		if(value == null){
+			return null;
+		}
+		int index = value.indexOf('-');
+		if(index <= 0 || index == value.length() - 1){
+			return null;
+		}
+		return new TraceContext(value.substring(0, index), value.substring(index + 1));
+	}
+
+	@Override
+	public String toString() {
+		return this.encode();
+	}
+}
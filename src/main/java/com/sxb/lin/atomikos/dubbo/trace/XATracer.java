@@ -0,0 +1,89 @@
+package com.sxb.lin.atomikos.dubbo.trace;
+
+import com.alibaba.dubbo.rpc.RpcContext;
+import com.sxb.lin.atomikos.dubbo.service.DubboTransactionManagerServiceProxy;
+
+/**
+ * creates the spans and carries the trace context,on the thread while a span is in progress
+ * and to other nodes in the xaTrace attachment. everything is a no-op while no exporter is set.
+ */
+public final class XATracer {
+	
+	public final static String XA_TRACE_KEY = "xaTrace";
+	
+	private final static ThreadLocal<TraceContext> CURRENT = new ThreadLocal<TraceContext>();
+	
+	private XATracer() {
+		
+	}
+	
+	public static boolean isEnabled(){
+		return getExporter() != NoopSpanExporter.INSTANCE;
+	}
+	
+	private static SpanExporter getExporter(){
+		return DubboTransactionManagerServiceProxy.getInstance().getSpanExporter();
+	}
+	
+	/**
+	 * null when tracing is disabled,a new trace is started when parent is null.
+	 */
+	public static Span startSpan(String name, TraceContext parent, String tid, String uniqueResourceName, String remoteAddress){
+		SpanExporter exporter = getExporter();
+		if(exporter == NoopSpanExporter.INSTANCE){
+			return null;
+		}
+		return new Span(name, parent, tid, uniqueResourceName, remoteAddress, 
+				DubboTransactionManagerServiceProxy.getInstance().getLocalAddress(), exporter);
+	}
+	
+	public static TraceContext current(){
+		return CURRENT.get();
+	}
+	
+	/**
+	 * returns the context bound before,give it to restore.
+	 */
+	public static TraceContext bind(TraceContext context){
+		TraceContext old = CURRENT.get();
+		CURRENT.set(context);
+		return old;
+	}
+	
+	public static void restore(TraceContext old){
+		CURRENT.set(old);
+	}
+	
+	/**
+	 * binds the span to the thread for a local call and attaches it to the next rpc,
+	 * returns the context bound before,give it to restoreInjected.
+	 */
+	public static TraceContext inject(Span span){
+		TraceContext old = CURRENT.get();
+		if(span != null){
+			TraceContext context = span.getContext();
+			CURRENT.set(context);
+			RpcContext.getContext().setAttachment(XA_TRACE_KEY, context.encode());
+		}
+		return old;
+	}
+	
+	public static void restoreInjected(Span span, TraceContext old){
+		if(span != null){
+			CURRENT.set(old);
+			RpcContext.getContext().removeAttachment(XA_TRACE_KEY);
+		}
+	}
+	
+	/**
+	 * the parent of a span served for another node,the context bound to the thread
+	 * when the call was local,else the xaTrace attachment of the call.
+	 */
+	public static TraceContext extract(){
+		TraceContext context = CURRENT.get();
+		if(context != null){
+			return context;
+		}
+		return TraceContext.decode(RpcContext.getContext().getAttachment(XA_TRACE_KEY));
+	}
+}